@@ -23,6 +23,7 @@
 package jp.pay.android
 
 import android.app.Activity
+import android.content.Context
 import android.content.Intent
 import androidx.annotation.IntDef
 import androidx.annotation.MainThread
@@ -120,6 +121,15 @@ object PayjpCardForm {
         "You must initialize Payjp first"
     }
 
+    /**
+     * Start loading phone number metadata before the card form asks for it.
+     */
+    internal fun warmUpPhoneNumberService(context: Context, extraAttributes: List<ExtraAttribute<*>>) {
+        if (extraAttributes.any { it is ExtraAttribute.Phone }) {
+            phoneNumberService?.warmUp(context)
+        }
+    }
+
     /**
      * Start card form screen from Activity.
      *
@@ -140,14 +150,17 @@ object PayjpCardForm {
         @CardFormFace face: Int = FACE_MULTI_LINE,
         extraAttributes: Array<ExtraAttribute<*>> = ExtraAttribute.defaults(),
         useThreeDSecure: Boolean = false,
-    ) = PayjpCardFormActivity.start(
-        activity = activity,
-        requestCode = requestCode,
-        tenant = tenant,
-        face = face,
-        extraAttributes = extraAttributes,
-        useThreeDSecure = useThreeDSecure,
-    )
+    ) {
+        warmUpPhoneNumberService(activity, extraAttributes.asList())
+        PayjpCardFormActivity.start(
+            activity = activity,
+            requestCode = requestCode,
+            tenant = tenant,
+            face = face,
+            extraAttributes = extraAttributes,
+            useThreeDSecure = useThreeDSecure,
+        )
+    }
 
     /**
      * Start card form screen from Fragment.
@@ -168,14 +181,17 @@ object PayjpCardForm {
         @CardFormFace face: Int = FACE_MULTI_LINE,
         extraAttributes: Array<ExtraAttribute<*>> = ExtraAttribute.defaults(),
         useThreeDSecure: Boolean = false,
-    ) = PayjpCardFormActivity.start(
-        fragment = fragment,
-        requestCode = requestCode,
-        tenant = tenant,
-        face = face,
-        extraAttributes = extraAttributes,
-        useThreeDSecure = useThreeDSecure,
-    )
+    ) {
+        warmUpPhoneNumberService(fragment.requireContext(), extraAttributes.asList())
+        PayjpCardFormActivity.start(
+            fragment = fragment,
+            requestCode = requestCode,
+            tenant = tenant,
+            face = face,
+            extraAttributes = extraAttributes,
+            useThreeDSecure = useThreeDSecure,
+        )
+    }
 
     /**
      * Handle the result from the activity which is started by [PayjpCardForm.start].
@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.data
+
+import jp.pay.android.model.CountryCode
+import java.text.Normalizer
+import java.util.Locale
+
+/**
+ * Search index of country codes.
+ *
+ * Each country code is matched by its region, dial code and localized name.
+ * Matching ignores case and diacritics, and matches at the start of a word come first.
+ * Building the index formats every display name, so build it off the main thread.
+ */
+internal class CountryCodeSearchIndex(countryCodes: List<CountryCode>) {
+
+    /**
+     * An indexed country code.
+     *
+     * @param countryCode country code
+     * @param description text to display
+     */
+    class Entry internal constructor(
+        val countryCode: CountryCode,
+        val description: String,
+        internal val key: String,
+    )
+
+    val entries: List<Entry> = countryCodes.map { countryCode ->
+        val displayName = countryCode.locale.getDisplayCountry(countryCode.displayLocale)
+        val englishName = countryCode.locale.getDisplayCountry(Locale.ENGLISH)
+        val key = buildString {
+            append(' ').append(countryCode.region)
+            append(' ').append(displayName)
+            if (englishName != displayName) {
+                append(' ').append(englishName)
+            }
+            append(" +").append(countryCode.code)
+            append(' ').append(countryCode.code)
+        }
+        Entry(
+            countryCode = countryCode,
+            description = countryCode.searchDescription,
+            key = normalize(key),
+        )
+    }
+
+    /**
+     * Return entries matching [query], or all the entries if [query] is blank.
+     */
+    fun search(query: String?): List<Entry> {
+        val normalized = normalize(query.orEmpty().trim())
+        if (normalized.isEmpty()) {
+            return entries
+        }
+        val wordPrefix = " $normalized"
+        val prefixMatches = ArrayList<Entry>()
+        val substringMatches = ArrayList<Entry>()
+        for (entry in entries) {
+            when {
+                entry.key.contains(wordPrefix) -> prefixMatches.add(entry)
+                entry.key.contains(normalized) -> substringMatches.add(entry)
+            }
+        }
+        prefixMatches.addAll(substringMatches)
+        return prefixMatches
+    }
+
+    companion object {
+        private val COMBINING_MARKS = "\\p{Mn}+".toRegex()
+
+        fun normalize(text: String): String =
+            COMBINING_MARKS.replace(Normalizer.normalize(text, Normalizer.Form.NFD), "")
+                .lowercase(Locale.ROOT)
+    }
+}
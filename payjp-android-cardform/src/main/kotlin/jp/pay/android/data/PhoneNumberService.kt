@@ -30,11 +30,44 @@ import jp.pay.android.model.CountryCode
  */
 internal interface PhoneNumberService {
 
+    /**
+     * Start loading phone number metadata in background if it has not been loaded yet.
+     * Other methods wait for it if they are called while loading,
+     * so check [isReady] before calling them on the main thread.
+     * @param context context
+     */
+    fun warmUp(context: Context)
+
+    /**
+     * Return true if the metadata has been loaded, without waiting for it.
+     */
+    fun isReady(): Boolean
+
+    /**
+     * Run [listener] once on the main thread when the metadata is loaded (soon if it has been loaded).
+     * @param listener listener
+     */
+    fun addOnReadyListener(listener: Runnable)
+
+    /**
+     * Remove [listener] added by [addOnReadyListener].
+     * @param listener listener
+     */
+    fun removeOnReadyListener(listener: Runnable)
+
     /**
      * Return all country codes.
      */
     fun getAllCountryCodes(context: Context): List<CountryCode>
 
+    /**
+     * Get the search index of all the country codes.
+     * It is built in background once (by [warmUp] as well), and [callback] runs on the main thread.
+     * @param context context
+     * @param callback called with the index, immediately if it has been built.
+     */
+    fun getCountryCodeSearchIndex(context: Context, callback: (CountryCodeSearchIndex) -> Unit)
+
     /**
      * Find country code by region.
      */
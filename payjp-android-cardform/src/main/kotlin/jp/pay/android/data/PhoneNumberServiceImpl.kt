@@ -23,42 +23,145 @@
 package jp.pay.android.data
 
 import android.content.Context
+import android.os.Handler
+import android.os.Looper
 import io.michaelrocks.libphonenumber.android.NumberParseException
 import io.michaelrocks.libphonenumber.android.PhoneNumberUtil
 import jp.pay.android.model.CountryCode
 import java.util.Locale
+import java.util.concurrent.Callable
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.FutureTask
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
 
 internal class PhoneNumberServiceImpl(
-    private val locale: Locale
+    private val locale: Locale,
+    // normal priority, because the main thread may wait for it.
+    private val warmUpExecutor: Executor = Executor { r ->
+        Thread(r, "payjp-phone-number").apply { isDaemon = true }.start()
+    }
 ) : PhoneNumberService {
-    private var phoneNumberUtilOrNull: PhoneNumberUtil? = null
+    private val phoneNumberUtilTask = AtomicReference<FutureTask<PhoneNumberUtil>?>()
+    private val warmUpStarted = AtomicBoolean(false)
+    private val readyListeners = CopyOnWriteArrayList<Runnable>()
+    private val mainHandler = Handler(Looper.getMainLooper())
+    @Volatile
+    private var all: List<CountryCode>? = null
+    @Volatile
+    private var searchIndex: CountryCodeSearchIndex? = null
+    // hardcode to JP
+    private val defaultCountryCode = CountryCode.of("JP", 81, locale)
+
+    private fun phoneNumberUtilTask(context: Context): FutureTask<PhoneNumberUtil> {
+        phoneNumberUtilTask.get()?.let { return it }
+        val applicationContext = context.applicationContext
+        val task = FutureTask(Callable { PhoneNumberUtil.createInstance(applicationContext) })
+        return if (phoneNumberUtilTask.compareAndSet(null, task)) task else checkNotNull(phoneNumberUtilTask.get())
+    }
+
+    /**
+     * Return the loaded [PhoneNumberUtil], or null without waiting if it is not loaded.
+     */
+    private fun phoneNumberUtilOrNull(): PhoneNumberUtil? {
+        val task = phoneNumberUtilTask.get()?.takeIf { it.isDone } ?: return null
+        return try {
+            task.get()
+        } catch (e: ExecutionException) {
+            null
+        }
+    }
+
     private fun phoneNumberUtil(context: Context): PhoneNumberUtil {
-        return phoneNumberUtilOrNull ?: PhoneNumberUtil.createInstance(context.applicationContext).also {
-            phoneNumberUtilOrNull = it
+        val task = phoneNumberUtilTask(context)
+        // load inline if warm-up has not started yet, otherwise wait for it.
+        task.run()
+        return try {
+            task.get().also { notifyReady() }
+        } catch (e: ExecutionException) {
+            // allow to retry next time.
+            phoneNumberUtilTask.compareAndSet(task, null)
+            warmUpStarted.set(false)
+            throw e.cause ?: e
         }
     }
-    private var all: List<CountryCode>? = null
+
+    private fun notifyReady() {
+        if (readyListeners.isEmpty()) {
+            return
+        }
+        mainHandler.post {
+            readyListeners.forEach { listener ->
+                if (readyListeners.remove(listener)) {
+                    listener.run()
+                }
+            }
+        }
+    }
+
+    override fun warmUp(context: Context) {
+        val task = phoneNumberUtilTask(context)
+        if (!task.isDone && warmUpStarted.compareAndSet(false, true)) {
+            val applicationContext = context.applicationContext
+            warmUpExecutor.execute {
+                // load and build the search index for the search screen as well.
+                // it notifies the ready listeners, or allows to retry next time if failed.
+                runCatching { searchIndex(applicationContext) }
+            }
+        }
+    }
+
+    override fun isReady(): Boolean = phoneNumberUtilOrNull() != null
+
+    override fun addOnReadyListener(listener: Runnable) {
+        readyListeners.add(listener)
+        if (isReady()) {
+            notifyReady()
+        }
+    }
+
+    override fun removeOnReadyListener(listener: Runnable) {
+        readyListeners.remove(listener)
+    }
 
     override fun getAllCountryCodes(context: Context): List<CountryCode> {
         return all ?: run {
-            val result = phoneNumberUtil(context).supportedRegions.map {
-                CountryCode(it, phoneNumberUtil(context).getCountryCodeForRegion(it), locale)
+            val phoneNumberUtil = phoneNumberUtil(context)
+            val result = phoneNumberUtil.supportedRegions.map {
+                CountryCode.of(it, phoneNumberUtil.getCountryCodeForRegion(it), locale)
             }
             all = result
             result
         }
     }
 
+    override fun getCountryCodeSearchIndex(context: Context, callback: (CountryCodeSearchIndex) -> Unit) {
+        searchIndex?.let {
+            callback(it)
+            return
+        }
+        val applicationContext = context.applicationContext
+        warmUpExecutor.execute {
+            val index = searchIndex(applicationContext)
+            mainHandler.post { callback(index) }
+        }
+    }
+
+    private fun searchIndex(context: Context): CountryCodeSearchIndex {
+        return searchIndex ?: synchronized(this) {
+            searchIndex ?: CountryCodeSearchIndex(getAllCountryCodes(context)).also { searchIndex = it }
+        }
+    }
+
     override fun findCountryCodeByRegion(context: Context, region: String): CountryCode? {
         return phoneNumberUtil(context).getCountryCodeForRegion(region).takeIf { it > 0 }?.let {
-            CountryCode(region, it, locale)
+            CountryCode.of(region, it, locale)
         }
     }
 
-    override fun defaultCountryCode(): CountryCode {
-        // hardcode to JP
-        return CountryCode("JP", 81, locale)
-    }
+    override fun defaultCountryCode(): CountryCode = defaultCountryCode
 
     override fun normalize(context: Context, phoneNumber: String, countryCode: CountryCode): String? {
         return try {
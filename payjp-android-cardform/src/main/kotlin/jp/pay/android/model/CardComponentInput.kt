@@ -94,10 +94,13 @@ internal sealed class CardComponentInput<T> {
 
     /**
      * Phone Number (as Extra Attributes)
+     *
+     * @param pending true if it is not validated yet because the phone number metadata is loading.
      */
     internal data class CardPhoneNumberInput(
         override val input: String?,
         override val value: String?,
-        override val errorMessage: FormInputError?
+        override val errorMessage: FormInputError?,
+        val pending: Boolean = false
     ) : CardComponentInput<String>()
 }
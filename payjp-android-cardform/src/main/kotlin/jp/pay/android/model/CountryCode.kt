@@ -23,16 +23,34 @@
 package jp.pay.android.model
 
 import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
 
 internal data class CountryCode(val region: String, val code: Int, val displayLocale: Locale = Locale.getDefault()) {
     val emoji: String? = createEmoji(region)
     val locale: Locale = Locale("", region)
-    val shortName: String
-        get() = "$emoji (+$code)"
-    val searchDescription: String
-        get() = "$emoji $region ${locale.getDisplayCountry(displayLocale)} (+$code)"
+    val shortName: String = "$emoji (+$code)"
+    val searchDescription: String by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        "$emoji $region ${locale.getDisplayCountry(displayLocale)} (+$code)"
+    }
 
     companion object {
+        private data class Key(val region: String, val code: Int, val displayLocale: Locale)
+
+        private val registry = ConcurrentHashMap<Key, CountryCode>()
+
+        /**
+         * Return the shared instance for the country code.
+         * @param region region code (e.g. JP)
+         * @param code country calling code (e.g. 81)
+         * @param displayLocale locale to display the country name
+         */
+        fun of(region: String, code: Int, displayLocale: Locale = Locale.getDefault()): CountryCode {
+            val key = Key(region, code, displayLocale)
+            return registry[key] ?: CountryCode(region, code, displayLocale).let {
+                registry.putIfAbsent(key, it) ?: it
+            }
+        }
+
         /**
          * Create emoji from region code.
          * @param region region code (e.g. JP)
@@ -42,12 +60,12 @@ internal data class CountryCode(val region: String, val code: Int, val displayLo
             if (region.length != 2) {
                 return null
             }
-            return region.uppercase()
-                .map { char ->
-                    Character.codePointAt("$char", 0) - 0x41 + 0x1F1E6
-                }.joinToString("") {
-                    String(Character.toChars(it))
-                }
+            // each flag is a pair of regional indicator symbols.
+            val builder = StringBuilder(4)
+            for (char in region) {
+                builder.appendCodePoint(char.uppercaseChar().code - 0x41 + 0x1F1E6)
+            }
+            return builder.toString()
         }
     }
 }
@@ -165,6 +165,9 @@ internal class PayjpCardFormActivity :
         supportActionBar?.setDisplayHomeAsUpEnabled(true)
         setUpUI()
         cardFormFragment = findCardFormFragment()
+        if (useThreeDSecure) {
+            PayjpVerifier.warmUp(this)
+        }
 
         PayjpCardForm.clientInfoInterceptorProvider()?.getClientInfoInterceptor()?.applyClientInfoExtra {
             setCardFormType(PayjpCardForm.getCardFormFaceString(face))
@@ -173,6 +176,9 @@ internal class PayjpCardFormActivity :
     }
 
     override fun onDestroy() {
+        if (useThreeDSecure && isFinishing) {
+            PayjpVerifier.releaseWarmUp()
+        }
         PayjpCardForm.clientInfoInterceptorProvider()?.getClientInfoInterceptor()?.applyClientInfoExtra {
             setCardFormType(null)
         }
@@ -278,7 +284,8 @@ internal class PayjpCardFormActivity :
     private fun performSubmitButton(windowToken: IBinder) {
         inputMethodManager.hideSoftInputFromWindow(windowToken, InputMethodManager.HIDE_NOT_ALWAYS)
         cardFormFragment?.let { cardForm ->
-            if (cardForm.isValid) {
+            // validate the latest input, including the one whose validation is debounced.
+            if (cardForm.validateCardForm()) {
                 viewModel?.onCreateToken(cardForm.createToken(useThreeDSecure))
             }
         }
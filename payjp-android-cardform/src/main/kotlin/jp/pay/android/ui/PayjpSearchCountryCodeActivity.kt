@@ -22,7 +22,6 @@
  */
 package jp.pay.android.ui
 
-import android.annotation.SuppressLint
 import android.content.Intent
 import android.os.Bundle
 import android.view.LayoutInflater
@@ -32,10 +31,14 @@ import android.view.ViewGroup
 import android.widget.TextView
 import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.SearchView
+import androidx.lifecycle.Lifecycle
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import jp.pay.android.PayjpCardForm
 import jp.pay.android.R
+import jp.pay.android.data.CountryCodeSearchIndex
 import jp.pay.android.databinding.PayjpSearchCountryCodeActivityBinding
 import jp.pay.android.model.CountryCode
 import jp.pay.android.ui.extension.applyWindowInsets
@@ -46,6 +49,8 @@ internal class PayjpSearchCountryCodeActivity : AppCompatActivity() {
     }
     private lateinit var binding: PayjpSearchCountryCodeActivityBinding
     private lateinit var adapter: CountryCodesAdapter
+    private var searchIndex: CountryCodeSearchIndex? = null
+    private var query: String? = null
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -66,11 +71,21 @@ internal class PayjpSearchCountryCodeActivity : AppCompatActivity() {
         }
         binding.payjpCountryCodeRecyclerView.layoutManager = LinearLayoutManager(this)
         binding.payjpCountryCodeRecyclerView.adapter = adapter
-        adapter.setCountryCodes(PayjpCardForm.phoneNumberService().getAllCountryCodes(this))
+        loadSearchIndex()
 
         binding.root.applyWindowInsets()
     }
 
+    private fun loadSearchIndex() {
+        // the index is shared and usually built by the warm-up.
+        PayjpCardForm.phoneNumberService().getCountryCodeSearchIndex(this) { index ->
+            if (lifecycle.currentState != Lifecycle.State.DESTROYED) {
+                searchIndex = index
+                adapter.submitList(index.search(query))
+            }
+        }
+    }
+
     override fun onSupportNavigateUp(): Boolean {
         finish()
         return super.onSupportNavigateUp()
@@ -85,9 +100,9 @@ internal class PayjpSearchCountryCodeActivity : AppCompatActivity() {
             }
 
             override fun onQueryTextChange(query: String?): Boolean {
-                val allCodes = PayjpCardForm.phoneNumberService().getAllCountryCodes(this@PayjpSearchCountryCodeActivity)
-                val filtered = allCodes.filter { it.searchDescription.contains(query ?: "", ignoreCase = true) }
-                adapter.setCountryCodes(filtered)
+                this@PayjpSearchCountryCodeActivity.query = query
+                // if the index is not ready yet, the query is applied when it is built.
+                searchIndex?.let { adapter.submitList(it.search(query)) }
                 return true
             }
         })
@@ -96,14 +111,20 @@ internal class PayjpSearchCountryCodeActivity : AppCompatActivity() {
     }
 
     class CountryCodesAdapter(private val onClick: (countryCode: CountryCode, view: ViewHolder) -> Unit) :
-        RecyclerView.Adapter<CountryCodesAdapter.ViewHolder>() {
-        private val countryCodes = mutableListOf<CountryCode>()
-
-        @SuppressLint("NotifyDataSetChanged")
-        fun setCountryCodes(countryCodes: List<CountryCode>) {
-            this.countryCodes.clear()
-            this.countryCodes.addAll(countryCodes)
-            notifyDataSetChanged()
+        ListAdapter<CountryCodeSearchIndex.Entry, CountryCodesAdapter.ViewHolder>(DIFF_CALLBACK) {
+
+        private companion object {
+            val DIFF_CALLBACK = object : DiffUtil.ItemCallback<CountryCodeSearchIndex.Entry>() {
+                override fun areItemsTheSame(
+                    oldItem: CountryCodeSearchIndex.Entry,
+                    newItem: CountryCodeSearchIndex.Entry
+                ): Boolean = oldItem.countryCode.region == newItem.countryCode.region
+
+                override fun areContentsTheSame(
+                    oldItem: CountryCodeSearchIndex.Entry,
+                    newItem: CountryCodeSearchIndex.Entry
+                ): Boolean = oldItem.description == newItem.description
+            }
         }
 
         override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
@@ -112,23 +133,20 @@ internal class PayjpSearchCountryCodeActivity : AppCompatActivity() {
         }
 
         override fun onBindViewHolder(holder: ViewHolder, position: Int) {
-            holder.countryCode = countryCodes[position]
-        }
-
-        override fun getItemCount(): Int {
-            return countryCodes.size
+            holder.entry = getItem(position)
         }
 
         class ViewHolder(itemView: View, onClick: (countryCode: CountryCode, view: ViewHolder) -> Unit) : RecyclerView.ViewHolder(itemView) {
-            var countryCode: CountryCode? = null
+            private val text = itemView.findViewById<TextView>(android.R.id.text1)
+            var entry: CountryCodeSearchIndex.Entry? = null
                 set(value) {
                     field = value
-                    itemView.findViewById<TextView>(android.R.id.text1).text = value?.searchDescription
+                    text.text = value?.description
                 }
 
             init {
                 itemView.setOnClickListener {
-                    countryCode?.let { onClick(it, this) }
+                    entry?.let { onClick(it.countryCode, this) }
                 }
             }
         }
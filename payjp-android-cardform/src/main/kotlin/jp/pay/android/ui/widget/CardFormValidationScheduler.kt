@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.ui.widget
+
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import androidx.annotation.MainThread
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Schedules card form validation work.
+ *
+ * Cheap validation runs inline; expensive validation is debounced and run off the main thread,
+ * and derived state is recomputed at most once per main thread turn.
+ * All methods must be called from the main thread, and all results are delivered on it.
+ */
+internal interface CardFormValidationScheduler {
+
+    /**
+     * Run [validate] after [delayMillis] unless another request for [key] replaces it,
+     * and deliver the result to [onResult].
+     */
+    @MainThread
+    fun <T> debounce(key: Any, delayMillis: Long, validate: () -> T, onResult: (T) -> Unit)
+
+    /**
+     * Drop pending validation for [key], including a result which is already computed.
+     */
+    @MainThread
+    fun cancel(key: Any)
+
+    /**
+     * Run [action] once for all the requests made for [key] in the current main thread turn.
+     */
+    @MainThread
+    fun coalesce(key: Any, action: () -> Unit)
+
+    /**
+     * Cancel all the pending work and release resources.
+     */
+    @MainThread
+    fun shutdown()
+
+    /**
+     * Scheduler running everything inline.
+     */
+    object Immediate : CardFormValidationScheduler {
+        override fun <T> debounce(key: Any, delayMillis: Long, validate: () -> T, onResult: (T) -> Unit) =
+            onResult(validate())
+
+        override fun cancel(key: Any) = Unit
+
+        override fun coalesce(key: Any, action: () -> Unit) = action()
+
+        override fun shutdown() = Unit
+    }
+}
+
+/**
+ * [CardFormValidationScheduler] which runs debounced validation on [executor]
+ * and delivers results via [handler].
+ */
+internal class HandlerValidationScheduler(
+    private val handler: Handler = Handler(Looper.getMainLooper()),
+    private val executor: Executor? = null,
+) : CardFormValidationScheduler {
+
+    private var ownedExecutor: ExecutorService? = null
+    private val generations = HashMap<Any, Int>()
+    private val coalescing = HashSet<Any>()
+    private var isShutdown = false
+
+    override fun <T> debounce(key: Any, delayMillis: Long, validate: () -> T, onResult: (T) -> Unit) {
+        if (isShutdown) {
+            return
+        }
+        handler.removeCallbacksAndMessages(key)
+        val generation = (generations[key] ?: 0) + 1
+        generations[key] = generation
+        val deliver = { result: T ->
+            handler.post {
+                if (!isShutdown && generations[key] == generation) {
+                    onResult(result)
+                }
+            }
+        }
+        val run = Runnable {
+            executor().execute { deliver(validate()) }
+        }
+        handler.postAtTime(run, key, SystemClock.uptimeMillis() + delayMillis)
+    }
+
+    private fun executor(): Executor = executor ?: ownedExecutor ?: Executors.newSingleThreadExecutor { r ->
+        Thread(r, "payjp-card-form-validation").apply { isDaemon = true }
+    }.also { ownedExecutor = it }
+
+    override fun cancel(key: Any) {
+        handler.removeCallbacksAndMessages(key)
+        generations[key] = (generations[key] ?: 0) + 1
+    }
+
+    override fun coalesce(key: Any, action: () -> Unit) {
+        if (isShutdown || !coalescing.add(key)) {
+            return
+        }
+        handler.post {
+            coalescing.remove(key)
+            if (!isShutdown) {
+                action()
+            }
+        }
+    }
+
+    override fun shutdown() {
+        isShutdown = true
+        generations.keys.forEach { handler.removeCallbacksAndMessages(it) }
+        generations.clear()
+        coalescing.clear()
+        ownedExecutor?.shutdownNow()
+        ownedExecutor = null
+    }
+}
@@ -75,6 +75,7 @@ internal class CardFormViewModel(
     acceptedBrandsPreset: List<CardBrand>?,
     private val phoneNumberService: PhoneNumberService,
     private val extraAttributes: List<ExtraAttribute<*>>,
+    private val validationScheduler: CardFormValidationScheduler = CardFormValidationScheduler.Immediate,
 ) : ViewModel(), CardFormViewModelOutput, CardFormViewModelInput, DefaultLifecycleObserver {
 
     override val cardNumberInput = MutableLiveData<CardNumberInput>()
@@ -86,7 +87,7 @@ internal class CardFormViewModel(
     override val cardHolderNameError: LiveData<Int?>
     override val cardNumberBrand: LiveData<CardBrand>
     override val cardExpiration: LiveData<CardExpiration?>
-    override val isValid: LiveData<Boolean>
+    override val isValid: MediatorLiveData<Boolean>
     override val cardNumberValid: LiveData<Boolean>
     override val cardExpirationValid: LiveData<Boolean>
     override val cardCvcInput = MutableLiveData<CardCvcInput>()
@@ -106,6 +107,8 @@ internal class CardFormViewModel(
     private var task: Task<CardBrandsAcceptedResponse>? = null
     private val brandObserver: Observer<CardBrand>
     private val countryCodeObserver: Observer<CountryCode>
+    private var pendingPhoneNumberInput: String? = null
+    private val phoneNumberServiceReadyListener = Runnable { onPhoneNumberServiceReady() }
 
     init {
         cardNumberInputTransformer.acceptedBrands = acceptedBrandsPreset
@@ -157,22 +160,31 @@ internal class CardFormViewModel(
             else -> CardFormInputType.HolderName
         }
         isValid = MediatorLiveData<Boolean>().apply {
-            addSource(cardNumberInput) { value = checkValid() }
-            addSource(cardExpirationInput) { value = checkValid() }
-            addSource(cardCvcInput) { value = checkValid() }
-            addSource(cardHolderNameInput) { value = checkValid() }
-            addSource(cardEmailInput) { value = checkValid() }
-            addSource(cardPhoneNumberInput) { value = checkValid() }
-            addSource(cardEmailError) { value = checkValid() }
-            addSource(cardPhoneNumberError) { value = checkValid() }
+            // recompute once even if several sources change at the same time.
+            val invalidate = Observer<Any?> {
+                validationScheduler.coalesce(this) { value = checkValid() }
+            }
+            addSource(cardNumberInput, invalidate)
+            addSource(cardExpirationInput, invalidate)
+            addSource(cardCvcInput, invalidate)
+            addSource(cardHolderNameInput, invalidate)
+            addSource(cardEmailInput, invalidate)
+            addSource(cardPhoneNumberInput, invalidate)
+            addSource(cardEmailError, invalidate)
+            addSource(cardPhoneNumberError, invalidate)
+        }
+        if (cardPhoneNumberEnabled && !phoneNumberService.isReady()) {
+            phoneNumberService.addOnReadyListener(phoneNumberServiceReadyListener)
         }
     }
 
     override fun onCleared() {
         task?.cancel()
         task = null
+        validationScheduler.shutdown()
         cardNumberBrand.removeObserver(brandObserver)
         cardPhoneNumberCountryCode.removeObserver(countryCodeObserver)
+        phoneNumberService.removeOnReadyListener(phoneNumberServiceReadyListener)
     }
 
     override fun inputCardNumber(input: String) =
@@ -196,7 +208,17 @@ internal class CardFormViewModel(
     }
 
     override fun inputPhoneNumber(input: String) {
-        inputComponent(input, cardPhoneNumberInput, cardPhoneNumberInputTransformer)
+        // phone number validation is expensive, so run it after the user pauses typing.
+        showErrorImmediately.value = false
+        pendingPhoneNumberInput = input
+        validationScheduler.debounce(
+            key = cardPhoneNumberInput,
+            delayMillis = PHONE_NUMBER_VALIDATION_DELAY_MILLIS,
+            validate = { cardPhoneNumberInputTransformer.transform(input) },
+        ) {
+            pendingPhoneNumberInput = null
+            applyInput(cardPhoneNumberInput, it)
+        }
     }
 
     override fun validate() {
@@ -207,10 +229,13 @@ internal class CardFormViewModel(
         forceValidate(cardHolderNameInput, cardHolderNameInputTransformer)
         forceValidate(cardEmailInput, cardEmailInputTransformer)
         forceValidate(cardPhoneNumberInput, cardPhoneNumberInputTransformer)
+        // callers read isValid right after validate(), so do not wait for the coalesced update.
+        isValid.value = checkValid()
     }
 
     override fun createToken(useThreeDSecure: Boolean): Task<Token> {
-        return if (isValid.value == true) {
+        flushPendingInput()
+        return if (checkValid()) {
             tokenService.createToken(
                 number = checkNotNull(cardNumberInput.value?.value),
                 expMonth = checkNotNull(cardExpirationInput.value?.value).month,
@@ -263,7 +288,8 @@ internal class CardFormViewModel(
                 val eitherIsValid = cardEmailInput.value?.valid == true || cardPhoneNumberInput.value?.valid == true
                 // allow empty
                 val neitherIsInvalid = cardEmailError.value?.takeIf { it != R.string.payjp_card_form_error_no_email } == null &&
-                    cardPhoneNumberError.value?.takeIf { it != R.string.payjp_card_form_error_no_phone_number } == null
+                    cardPhoneNumberError.value?.takeIf { it != R.string.payjp_card_form_error_no_phone_number } == null &&
+                    cardPhoneNumberInput.value?.pending != true
                 eitherIsValid && neitherIsInvalid
             }
             cardEmailEnabled -> cardEmailInput.value?.valid == true
@@ -283,30 +309,59 @@ internal class CardFormViewModel(
         transformer: CardInputTransformer<T>
     ) {
         showErrorImmediately.value = false
+        applyInput(data, transformer.transform(input))
+    }
+
+    private fun <T : CardComponentInput<*>> applyInput(data: MutableLiveData<T>, input: T) {
         val before = data.value
-        val i = transformer.transform(input)
-        data.value = i
-        if (i.valid && before != i && i !is CardHolderNameInput) {
+        data.value = input
+        if (input.valid && before != input && input !is CardHolderNameInput) {
             currentPrimaryElement.value = getPrimaryInput()
         }
     }
 
+    private fun onPhoneNumberServiceReady() {
+        cardPhoneNumberInputTransformer.applyPendingPreset()?.let { selectCountryCode(it) }
+        if (cardPhoneNumberInput.value?.pending == true) {
+            forceValidate(cardPhoneNumberInput, cardPhoneNumberInputTransformer)
+        }
+    }
+
+    private fun takePendingPhoneNumberInput(): String? = pendingPhoneNumberInput?.also {
+        pendingPhoneNumberInput = null
+        validationScheduler.cancel(cardPhoneNumberInput)
+    }
+
+    private fun flushPendingInput() {
+        takePendingPhoneNumberInput()?.let {
+            applyInput(cardPhoneNumberInput, cardPhoneNumberInputTransformer.transform(it))
+        }
+    }
+
     private fun <T : CardComponentInput<*>> forceValidate(
         data: MutableLiveData<T>,
         transformer: CardInputTransformer<T>
     ) {
-        data.value = transformer.transform(data.value?.input.orEmpty())
+        // validate the latest input even if its debounced validation has not completed yet.
+        val pending = if (data === cardPhoneNumberInput) takePendingPhoneNumberInput() else null
+        data.value = transformer.transform(pending ?: data.value?.input.orEmpty())
     }
 
-    private fun getPrimaryInput(): CardFormElementType? =
-        listOf(
-            cardNumberInput.value to CardFormElementType.Number,
-            cardExpirationInput.value to CardFormElementType.Expiration,
-            cardCvcInput.value to CardFormElementType.Cvc,
-            cardHolderNameInput.value to CardFormElementType.HolderName,
-            cardEmailInput.value to CardFormElementType.EmailAndPhoneNumber,
-            cardPhoneNumberInput.value to CardFormElementType.EmailAndPhoneNumber,
-        ).firstOrNull { it.first?.valid?.not() ?: true }?.second
+    private fun isIncomplete(input: CardComponentInput<*>?) = input?.valid != true
+
+    private fun getPrimaryInput(): CardFormElementType? = when {
+        isIncomplete(cardNumberInput.value) -> CardFormElementType.Number
+        isIncomplete(cardExpirationInput.value) -> CardFormElementType.Expiration
+        isIncomplete(cardCvcInput.value) -> CardFormElementType.Cvc
+        isIncomplete(cardHolderNameInput.value) -> CardFormElementType.HolderName
+        isIncomplete(cardEmailInput.value) -> CardFormElementType.EmailAndPhoneNumber
+        isIncomplete(cardPhoneNumberInput.value) -> CardFormElementType.EmailAndPhoneNumber
+        else -> null
+    }
+
+    private companion object {
+        const val PHONE_NUMBER_VALIDATION_DELAY_MILLIS = 300L
+    }
 
     /**
      * Factory class for [CardFormViewModel]
@@ -324,6 +379,7 @@ internal class CardFormViewModel(
         private val acceptedBrands: List<CardBrand>?,
         private val phoneNumberService: PhoneNumberService,
         private val extraAttributes: List<ExtraAttribute<*>>,
+        private val validationScheduler: () -> CardFormValidationScheduler = { HandlerValidationScheduler() },
     ) : ViewModelProvider.NewInstanceFactory() {
 
         @Suppress("UNCHECKED_CAST")
@@ -340,6 +396,7 @@ internal class CardFormViewModel(
                 acceptedBrandsPreset = acceptedBrands,
                 phoneNumberService = phoneNumberService,
                 extraAttributes = extraAttributes,
+                validationScheduler = validationScheduler(),
             ) as T
         }
     }
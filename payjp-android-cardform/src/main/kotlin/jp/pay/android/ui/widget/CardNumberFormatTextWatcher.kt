@@ -27,15 +27,33 @@ import android.text.Selection
 import android.text.TextWatcher
 import jp.pay.android.model.CardBrand
 
+/**
+ * Formats card number input by editing only the span that differs from the expected format.
+ *
+ * The watcher runs on every keystroke, so it avoids allocations on the hot path:
+ * delimiter positions are primitive lookup tables and the formatted text is built into
+ * reusable buffers before being applied to the [Editable].
+ */
 internal class CardNumberFormatTextWatcher(private val delimiter: Char) : TextWatcher {
 
-    // position include delimiter
-    private val delimiterPositionsCommon = listOf(4, 9, 14)
-    private val delimiterPositionsAmexDiners = listOf(4, 11)
     var brand: CardBrand = CardBrand.UNKNOWN
     private var ignoreChanges: Boolean = false
     private var latestChangeStart: Int = 0
     private var latestInsertionSize: Int = 0
+    private val digits = CharArray(MAX_DIGITS)
+    private val formatted = CharArray(MAX_DIGITS + MAX_DELIMITERS)
+    private var formattedLength = 0
+    private val formattedSequence = object : CharSequence {
+        override val length: Int
+            get() = formattedLength
+
+        override fun get(index: Int): Char = formatted[index]
+
+        override fun subSequence(startIndex: Int, endIndex: Int): CharSequence =
+            String(formatted, startIndex, endIndex - startIndex)
+
+        override fun toString(): String = String(formatted, 0, formattedLength)
+    }
 
     override fun beforeTextChanged(s: CharSequence, start: Int, count: Int, after: Int) {
         if (ignoreChanges) {
@@ -51,82 +69,106 @@ internal class CardNumberFormatTextWatcher(private val delimiter: Char) : TextWa
         if (ignoreChanges) {
             return
         }
-        if (!isInputCorrect(s)) {
+        val layout = getDelimiterLayout()
+        if (!isInputCorrect(s, layout)) {
             ignoreChanges = true
             val currentCursor = Selection.getSelectionStart(s)
-            val original = s.toString()
-            s.replace(0, s.length, buildCorrectString(createDigitArray(s), s))
-            val formatted = s.toString()
-            Selection.setSelection(s, getAdjustedCursorPosition(original, formatted, currentCursor))
+            val originalLength = s.length
+            val delimitersBeforeCursor = countDelimiters(s, currentCursor)
+            buildCorrectString(s, layout)
+            replaceDifference(s)
+            Selection.setSelection(
+                s,
+                getAdjustedCursorPosition(originalLength, currentCursor, delimitersBeforeCursor, layout)
+            )
             ignoreChanges = false
         }
     }
 
-    private fun isInputCorrect(s: Editable): Boolean {
-        val delimiterPositions = getDelimiterPositions()
+    private fun isInputCorrect(s: CharSequence, layout: DelimiterLayout): Boolean {
+        val length = s.length
         return when {
             // Case A. too long
-            s.length > (getMaxDigits() + delimiterPositions.size) -> false
+            length > (getMaxDigits() + layout.size) -> false
             // Case B. When we add `4` into `123`, input should be `1234 `.
-            s.length in delimiterPositions && latestInsertionSize > 0 -> false
+            layout.isDelimiter(length) && latestInsertionSize > 0 -> false
             // Case C. When we delete 1 character from `1234 `, input should be `123`.
-            s.length in delimiterPositions && latestChangeStart == s.length && latestInsertionSize == 0 -> false
+            layout.isDelimiter(length) && latestChangeStart == length && latestInsertionSize == 0 -> false
             // Case D. When we delete 1 character from `1234 5`, input should be `1234`.
-            (s.length - 1) in delimiterPositions && latestChangeStart == s.length && latestInsertionSize == 0 -> false
-            else -> s.indices.all { i ->
-                when {
-                    i > 0 && i in delimiterPositions -> delimiter == s[i]
-                    else -> Character.isDigit(s[i])
-                }
+            layout.isDelimiter(length - 1) && latestChangeStart == length && latestInsertionSize == 0 -> false
+            else -> isFormatted(s, layout)
+        }
+    }
+
+    private fun isFormatted(s: CharSequence, layout: DelimiterLayout): Boolean {
+        for (i in 0 until s.length) {
+            val c = s[i]
+            val valid = if (i > 0 && layout.isDelimiter(i)) delimiter == c else Character.isDigit(c)
+            if (!valid) {
+                return false
             }
         }
+        return true
     }
 
-    private fun buildCorrectString(digits: CharArray, original: CharSequence): String {
-        val formatted = StringBuilder()
-        val delimiterPositions = getDelimiterPositions()
-
-        for (i in digits.indices) {
-            val c = digits[i]
-            if (Character.isDigit(c)) {
-                formatted.append(c)
-                val nextIndex = formatted.lastIndex + 1
-                // for Case C and D, skip insertion if delete delimiter which is last.
-                // ex. `4242-` or `4242-4` but not `4242-42`
-                //          ^           ^               ^
-                val deletionLastDelimiterOrNext = latestInsertionSize == 0 &&
-                    latestChangeStart in nextIndex..nextIndex + 1 &&
-                    latestChangeStart in original.length..original.length + 1
-                if (i < digits.size - 1 &&
-                    nextIndex in delimiterPositions &&
-                    !deletionLastDelimiterOrNext
-                ) {
-                    formatted.append(delimiter)
-                }
+    /**
+     * Build the expected text into [formatted] and update [formattedLength].
+     */
+    private fun buildCorrectString(original: CharSequence, layout: DelimiterLayout) {
+        val max = getMaxDigits()
+        val digitCount = collectDigits(original, max)
+        var length = 0
+        for (i in 0 until digitCount) {
+            formatted[length++] = digits[i]
+            val nextIndex = length
+            // for Case C and D, skip insertion if delete delimiter which is last.
+            // ex. `4242-` or `4242-4` but not `4242-42`
+            //          ^           ^               ^
+            val deletionLastDelimiterOrNext = latestInsertionSize == 0 &&
+                latestChangeStart in nextIndex..nextIndex + 1 &&
+                latestChangeStart in original.length..original.length + 1
+            if (i < max - 1 &&
+                layout.isDelimiter(nextIndex) &&
+                !deletionLastDelimiterOrNext
+            ) {
+                formatted[length++] = delimiter
             }
         }
         // for Case C
-        val nextIndex = formatted.lastIndex + 1
-        if (nextIndex in delimiterPositions &&
-            latestChangeStart == nextIndex &&
+        if (layout.isDelimiter(length) &&
+            latestChangeStart == length &&
             latestInsertionSize == 0
         ) {
-            formatted.delete(formatted.length - 1, formatted.length)
+            length--
         }
+        formattedLength = length
+    }
 
-        return formatted.toString()
+    /**
+     * Replace only the span between the common prefix and suffix of [s] and [formatted].
+     */
+    private fun replaceDifference(s: Editable) {
+        val length = formattedLength
+        val shorter = minOf(s.length, length)
+        var prefix = 0
+        while (prefix < shorter && s[prefix] == formatted[prefix]) {
+            prefix++
+        }
+        var suffix = 0
+        while (suffix < shorter - prefix && s[s.length - 1 - suffix] == formatted[length - 1 - suffix]) {
+            suffix++
+        }
+        s.replace(prefix, s.length - suffix, formattedSequence, prefix, length - suffix)
     }
 
-    private fun getDelimiterPositions() = when (brand) {
-        CardBrand.AMEX, CardBrand.DINERS_CLUB -> delimiterPositionsAmexDiners
-        else -> delimiterPositionsCommon
+    private fun getDelimiterLayout() = when (brand) {
+        CardBrand.AMEX, CardBrand.DINERS_CLUB -> DELIMITERS_AMEX_DINERS
+        else -> DELIMITERS_COMMON
     }
 
     private fun getMaxDigits() = brand.numberLength
 
-    private fun createDigitArray(s: Editable): CharArray {
-        val max = getMaxDigits()
-        val digits = CharArray(max)
+    private fun collectDigits(s: CharSequence, max: Int): Int {
         var index = 0
         var i = 0
         while (i < s.length && index < max) {
@@ -137,19 +179,65 @@ internal class CardNumberFormatTextWatcher(private val delimiter: Char) : TextWa
             }
             i++
         }
-        return digits
+        return index
+    }
+
+    private fun countDelimiters(s: CharSequence, end: Int): Int {
+        var count = 0
+        for (i in 0 until end.coerceIn(0, s.length)) {
+            if (s[i] == delimiter) {
+                count++
+            }
+        }
+        return count
     }
 
     @Suppress("ReturnCount")
-    private fun getAdjustedCursorPosition(original: String, formatted: String, cursor: Int): Int {
-        if (cursor == original.length) {
-            return formatted.length
+    private fun getAdjustedCursorPosition(
+        originalLength: Int,
+        cursor: Int,
+        delimitersOriginal: Int,
+        layout: DelimiterLayout
+    ): Int {
+        if (cursor == originalLength) {
+            return formattedLength
         }
-        val delimitersOriginal = original.substring(0, cursor).count { it == delimiter }
-        val delimitersCorrect = getDelimiterPositions().count { it < cursor }
+        val delimitersCorrect = layout.countBefore(cursor)
         if (delimitersCorrect > delimitersOriginal) {
-            return cursor + (delimitersCorrect - delimitersOriginal)
+            return minOf(cursor + (delimitersCorrect - delimitersOriginal), formattedLength)
         }
-        return cursor
+        return minOf(cursor, formattedLength)
+    }
+
+    /**
+     * Delimiter positions of a brand, including preceding delimiters.
+     */
+    private class DelimiterLayout(private val positions: IntArray) {
+        private val table = BooleanArray(MAX_DIGITS + MAX_DELIMITERS + 1).also { table ->
+            positions.forEach { table[it] = true }
+        }
+
+        val size: Int
+            get() = positions.size
+
+        fun isDelimiter(index: Int): Boolean = index >= 0 && index < table.size && table[index]
+
+        fun countBefore(index: Int): Int {
+            var count = 0
+            for (position in positions) {
+                if (position < index) {
+                    count++
+                }
+            }
+            return count
+        }
+    }
+
+    private companion object {
+        val MAX_DIGITS = CardBrand.values().maxOf { it.numberLength }
+        const val MAX_DELIMITERS = 3
+        // position include delimiter
+        val DELIMITERS_COMMON = DelimiterLayout(intArrayOf(4, 9, 14))
+        val DELIMITERS_AMEX_DINERS = DelimiterLayout(intArrayOf(4, 11))
     }
 }
@@ -39,6 +39,7 @@ import androidx.fragment.app.Fragment
 import jp.pay.android.PayjpCardForm
 import jp.pay.android.R
 import jp.pay.android.Task
+import jp.pay.android.data.PhoneNumberService
 import jp.pay.android.exception.PayjpInvalidCardFormException
 import jp.pay.android.model.Token
 import jp.pay.android.plugin.CardScannerPlugin
@@ -49,6 +50,7 @@ import jp.pay.android.ui.widget.PayjpCardFormView.OnFetchAcceptedBrandsListener
 import jp.pay.android.ui.widget.PayjpCardFormView.OnValidateInputListener
 import jp.pay.android.util.Tasks
 import java.lang.ref.WeakReference
+import java.util.concurrent.CopyOnWriteArraySet
 
 abstract class PayjpCardFormAbstractFragment :
     Fragment(),
@@ -64,18 +66,30 @@ abstract class PayjpCardFormAbstractFragment :
         private set
     internal var viewModel: CardFormViewModel? = null
         private set
+    private val validateInputListeners = CopyOnWriteArraySet<OnValidateInputListener>()
     protected val searchCountryCodeLauncher = registerForActivityResult(
         ActivityResultContracts.StartActivityForResult()
     ) { result ->
         if (result.resultCode == RESULT_OK && result.data != null) {
             result?.data?.getStringExtra(EXTRA_REGION)?.let { region ->
-                PayjpCardForm.phoneNumberService().findCountryCodeByRegion(requireContext(), region)?.let { countryCode ->
-                    viewModel?.selectCountryCode(countryCode)
+                val service = PayjpCardForm.phoneNumberService()
+                if (service.isReady()) {
+                    selectCountryCode(service, region)
+                } else {
+                    // do not wait for the metadata on the main thread.
+                    service.addOnReadyListener { selectCountryCode(service, region) }
                 }
             }
         }
     }
 
+    private fun selectCountryCode(service: PhoneNumberService, region: String) {
+        val context = context ?: return
+        service.findCountryCodeByRegion(context, region)?.let { countryCode ->
+            viewModel?.selectCountryCode(countryCode)
+        }
+    }
+
     internal abstract fun createViewModel(): CardFormViewModel
 
     abstract fun setUpUI(view: ViewGroup)
@@ -122,6 +136,9 @@ abstract class PayjpCardFormAbstractFragment :
             }
             isValid.observe(viewLifecycleOwner) {
                 onValidateInputListener?.onValidateInput(this@PayjpCardFormAbstractFragment, it)
+                validateInputListeners.forEach { listener ->
+                    listener.onValidateInput(this@PayjpCardFormAbstractFragment, it)
+                }
             }
         }
     }
@@ -158,6 +175,25 @@ abstract class PayjpCardFormAbstractFragment :
         }
     }
 
+    /**
+     * Add listener for every validation result.
+     * Unlike the host implementing [OnValidateInputListener], it can be added from anywhere.
+     *
+     * @param listener listener
+     */
+    fun addOnValidateInputListener(listener: OnValidateInputListener) {
+        validateInputListeners.add(listener)
+    }
+
+    /**
+     * Remove listener added by [addOnValidateInputListener].
+     *
+     * @param listener listener
+     */
+    fun removeOnValidateInputListener(listener: OnValidateInputListener) {
+        validateInputListeners.remove(listener)
+    }
+
     override fun isValid(): Boolean = viewModel?.isValid?.value ?: false
 
     override fun validateCardForm(): Boolean {
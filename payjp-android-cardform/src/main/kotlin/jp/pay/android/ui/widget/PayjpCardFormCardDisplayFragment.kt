@@ -270,7 +270,8 @@ class PayjpCardFormCardDisplayFragment : PayjpCardFormAbstractFragment() {
         val acceptedBrandArray = arguments?.let { BundleCompat.getParcelableArray(it, ARGS_ACCEPTED_BRANDS, CardBrand::class.java) }
         val extraAttributes = arguments?.let {
             BundleCompat.getParcelableArray(it, ARGS_TDS_ATTRIBUTES, ExtraAttribute::class.java)
-        }
+        }?.filterIsInstance<ExtraAttribute<*>>() ?: emptyList()
+        PayjpCardForm.warmUpPhoneNumberService(requireContext(), extraAttributes)
         val factory = CardFormViewModel.Factory(
             tokenService = PayjpCardForm.tokenService(),
             cardNumberInputTransformer = CardNumberInputTransformer(),
@@ -285,7 +286,7 @@ class PayjpCardFormCardDisplayFragment : PayjpCardFormAbstractFragment() {
             tenantId = tenantId,
             acceptedBrands = acceptedBrandArray?.filterIsInstance<CardBrand>() ?: emptyList(),
             phoneNumberService = PayjpCardForm.phoneNumberService(),
-            extraAttributes = extraAttributes?.filterIsInstance<ExtraAttribute<*>>() ?: emptyList(),
+            extraAttributes = extraAttributes,
         )
         return ViewModelProvider(requireActivity(), factory)[CardFormViewModel::class.java]
     }
@@ -206,7 +206,8 @@ class PayjpCardFormFragment : PayjpCardFormAbstractFragment() {
         }
         val extraAttributes = arguments?.let {
             BundleCompat.getParcelableArray(it, ARGS_TDS_ATTRIBUTES, ExtraAttribute::class.java)
-        }
+        }?.filterIsInstance<ExtraAttribute<*>>() ?: emptyList()
+        PayjpCardForm.warmUpPhoneNumberService(requireContext(), extraAttributes)
         val factory = CardFormViewModel.Factory(
             tokenService = PayjpCardForm.tokenService(),
             cardNumberInputTransformer = CardNumberInputTransformer(),
@@ -221,7 +222,7 @@ class PayjpCardFormFragment : PayjpCardFormAbstractFragment() {
             tenantId = tenantId,
             acceptedBrands = acceptedBrandArray?.filterIsInstance<CardBrand>(),
             phoneNumberService = PayjpCardForm.phoneNumberService(),
-            extraAttributes = extraAttributes?.filterIsInstance<ExtraAttribute<*>>() ?: emptyList(),
+            extraAttributes = extraAttributes,
         )
         return ViewModelProvider(requireActivity(), factory).get(CardFormViewModel::class.java)
     }
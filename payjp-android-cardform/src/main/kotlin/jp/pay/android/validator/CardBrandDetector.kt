@@ -24,8 +24,78 @@ package jp.pay.android.validator
 
 import jp.pay.android.model.CardBrand
 
+/**
+ * Detect [CardBrand] from the leading digits (IIN) of the card number.
+ *
+ * The IIN prefixes are compiled into a decimal trie once, so that detection walks
+ * the input only once and never allocates (It runs on every keystroke of the form).
+ * The rules are the same as [CardBrand.numberRegex].
+ */
 internal object CardBrandDetector : CardBrandDetectorService {
 
-    override fun detectWithDigits(digits: String): CardBrand = CardBrand.entries
-        .firstOrNull { brand -> brand.numberRegex.matches(digits) } ?: CardBrand.UNKNOWN
+    private const val RADIX = 10
+    private const val ROOT = 0
+
+    /**
+     * IIN prefixes of each brand.
+     */
+    private val PREFIXES: Map<CardBrand, List<String>> = mapOf(
+        CardBrand.VISA to listOf("4"),
+        CardBrand.MASTER_CARD to (51..55).map(Int::toString) + (22..27).map(Int::toString),
+        CardBrand.JCB to listOf("3528", "3529") + (353..358).map(Int::toString),
+        CardBrand.AMEX to listOf("34", "37"),
+        CardBrand.DINERS_CLUB to (300..305).map(Int::toString) + listOf("36", "38"),
+        CardBrand.DISCOVER to listOf("6011", "65")
+    )
+
+    /**
+     * `children[node * RADIX + digit]` is the next node index, or 0 if there is no transition.
+     */
+    private val children: IntArray
+
+    /**
+     * terminal brand of each node, or null if the node is not terminal.
+     */
+    private val terminals: Array<CardBrand?>
+
+    init {
+        val nodeCount = 1 + PREFIXES.values.sumOf { prefixes -> prefixes.sumOf { it.length } }
+        val nodes = IntArray(nodeCount * RADIX)
+        val brands = arrayOfNulls<CardBrand>(nodeCount)
+        var size = 1
+        PREFIXES.forEach { (brand, prefixes) ->
+            prefixes.forEach { prefix ->
+                var node = ROOT
+                prefix.forEach { c ->
+                    val index = node * RADIX + (c - '0')
+                    if (nodes[index] == ROOT) {
+                        nodes[index] = size++
+                    }
+                    node = nodes[index]
+                }
+                brands[node] = brand
+            }
+        }
+        children = nodes
+        terminals = brands
+    }
+
+    override fun detectWithDigits(digits: CharSequence): CardBrand {
+        var node = ROOT
+        var brand: CardBrand? = null
+        for (i in 0 until digits.length) {
+            val digit = digits[i] - '0'
+            if (digit !in 0 until RADIX) {
+                return CardBrand.UNKNOWN
+            }
+            if (brand == null) {
+                node = children[node * RADIX + digit]
+                if (node == ROOT) {
+                    return CardBrand.UNKNOWN
+                }
+                brand = terminals[node]
+            }
+        }
+        return brand ?: CardBrand.UNKNOWN
+    }
 }
@@ -32,5 +32,5 @@ internal interface CardBrandDetectorService {
      * @param digits Card Number
      * @return brand
      */
-    fun detectWithDigits(digits: String): CardBrand
+    fun detectWithDigits(digits: CharSequence): CardBrand
 }
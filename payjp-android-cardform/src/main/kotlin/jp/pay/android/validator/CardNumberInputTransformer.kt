@@ -35,13 +35,34 @@ internal class CardNumberInputTransformer(
     override var acceptedBrands: List<CardBrand>? = null
 
     override fun transform(input: String?): CardComponentInput.CardNumberInput {
-        val brand = input?.filter(Character::isDigit)
-            ?.let(brandDetector::detectWithDigits)
-            ?: CardBrand.UNKNOWN
-        val digits = input?.filter(Character::isDigit)
-        val lengthCheck = cardNumberValidator.isCardNumberLengthValid(digits.orEmpty(), brand)
+        // Scan the input only once: collect digits and accumulate the Luhn sums.
+        // Which digits are doubled depends on the final length,
+        // so we accumulate both of the cases (doubling digits at even / odd index).
+        val digits = StringBuilder(input?.length ?: 0)
+        var luhnSumDoubledEven = 0
+        var luhnSumDoubledOdd = 0
+        if (input != null) {
+            for (c in input) {
+                if (!Character.isDigit(c)) {
+                    continue
+                }
+                val digit = Character.getNumericValue(c)
+                val doubled = CardNumberValidator.doubleLuhnDigit(digit)
+                if (digits.length % 2 == 0) {
+                    luhnSumDoubledEven += doubled
+                    luhnSumDoubledOdd += digit
+                } else {
+                    luhnSumDoubledEven += digit
+                    luhnSumDoubledOdd += doubled
+                }
+                digits.append(c)
+            }
+        }
+        val luhnSum = if (digits.length % 2 == 0) luhnSumDoubledEven else luhnSumDoubledOdd
+        val brand = input?.let { brandDetector.detectWithDigits(digits) } ?: CardBrand.UNKNOWN
+        val lengthCheck = cardNumberValidator.isCardNumberLengthValid(digits, brand)
         val errorMessage = when {
-            digits.isNullOrEmpty() -> FormInputError(
+            digits.isEmpty() -> FormInputError(
                 messageId = R.string.payjp_card_form_error_no_number,
                 lazy = true
             )
@@ -60,7 +81,7 @@ internal class CardNumberInputTransformer(
                     messageId = R.string.payjp_card_form_error_invalid_number,
                     lazy = true
                 )
-            !cardNumberValidator.isLuhnValid(digits) ->
+            !cardNumberValidator.isLuhnSumValid(luhnSum) ->
                 FormInputError(
                     messageId = R.string.payjp_card_form_error_invalid_number,
                     lazy = false
@@ -72,7 +93,7 @@ internal class CardNumberInputTransformer(
                 )
             else -> null
         }
-        val value = digits.takeIf { errorMessage == null }
+        val value = digits.takeIf { errorMessage == null }?.toString()
         return CardComponentInput.CardNumberInput(input, value, errorMessage, brand)
     }
 }
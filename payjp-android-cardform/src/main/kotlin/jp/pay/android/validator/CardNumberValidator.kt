@@ -34,7 +34,7 @@ internal object CardNumberValidator : CardNumberValidatorService {
      * @param brand brand
      */
     override fun isCardNumberLengthValid(
-        cardNumber: String,
+        cardNumber: CharSequence,
         brand: CardBrand
     ): CardNumberLengthStatus {
         val brandLength = brand.numberLength
@@ -47,11 +47,12 @@ internal object CardNumberValidator : CardNumberValidatorService {
 
     /**
      * Check Luhn algorithm
+     * [CardNumberInputTransformer] accumulates the sum while scanning the input and uses [isLuhnSumValid] instead.
      *
      * @param cardNumber card number
      * @return valid if true
      */
-    override fun isLuhnValid(cardNumber: String): Boolean {
+    fun isLuhnValid(cardNumber: CharSequence): Boolean {
         var isOdd = true
         var sum = 0
 
@@ -65,16 +66,25 @@ internal object CardNumberValidator : CardNumberValidatorService {
             isOdd = !isOdd
 
             if (isOdd) {
-                digit *= 2
-            }
-
-            if (digit > 9) {
-                digit -= 9
+                digit = doubleLuhnDigit(digit)
             }
 
             sum += digit
         }
 
-        return sum % 10 == 0
+        return isLuhnSumValid(sum)
+    }
+
+    override fun isLuhnSumValid(luhnSum: Int): Boolean = luhnSum % 10 == 0
+
+    /**
+     * Double the digit for Luhn algorithm.
+     *
+     * @param digit 0-9
+     * @return doubled digit, minus 9 if it is over 9.
+     */
+    fun doubleLuhnDigit(digit: Int): Int {
+        val doubled = digit * 2
+        return if (doubled > 9) doubled - 9 else doubled
     }
 }
@@ -26,11 +26,17 @@ import jp.pay.android.model.CardBrand
 
 internal interface CardNumberValidatorService {
     fun isCardNumberLengthValid(
-        cardNumber: String,
+        cardNumber: CharSequence,
         brand: CardBrand = CardBrand.UNKNOWN
     ): CardNumberLengthStatus
 
-    fun isLuhnValid(cardNumber: String): Boolean
+    /**
+     * Check the sum of Luhn algorithm which is already accumulated.
+     *
+     * @param luhnSum sum of digits (every second digit from the right is doubled)
+     * @return valid if true
+     */
+    fun isLuhnSumValid(luhnSum: Int): Boolean
 
     enum class CardNumberLengthStatus {
         MATCH, TOO_LONG, TOO_SHORT
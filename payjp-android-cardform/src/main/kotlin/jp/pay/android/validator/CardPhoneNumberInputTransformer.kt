@@ -34,10 +34,18 @@ internal class CardPhoneNumberInputTransformer(
     private val service: PhoneNumberService
 ) : CardPhoneNumberInputTransformerService {
 
+    // read from the validation thread of the card form.
+    @Volatile
     override var currentCountryCode: CountryCode? = null
 
+    private var pendingPresetRegion: String? = null
+
     override fun transform(input: String?): CardComponentInput.CardPhoneNumberInput {
         val trimmed = input?.trim()
+        if (!trimmed.isNullOrEmpty() && !service.isReady()) {
+            // do not wait for the metadata on the main thread. it is validated again when loaded.
+            return CardComponentInput.CardPhoneNumberInput(input, null, null, pending = true)
+        }
         val countryCode = currentCountryCode ?: service.defaultCountryCode()
         val normalized = trimmed?.takeIf { it.isNotEmpty() }?.let { service.normalize(context, it, countryCode) }
 
@@ -52,7 +60,20 @@ internal class CardPhoneNumberInputTransformer(
     }
 
     override fun injectPreset(region: String, number: String?): CardComponentInput.CardPhoneNumberInput {
-        currentCountryCode = service.findCountryCodeByRegion(context, region) ?: service.defaultCountryCode()
+        if (service.isReady()) {
+            currentCountryCode = findCountryCode(region)
+        } else {
+            pendingPresetRegion = region
+        }
         return transform(number)
     }
+
+    override fun applyPendingPreset(): CountryCode? {
+        val region = pendingPresetRegion?.takeIf { service.isReady() } ?: return null
+        pendingPresetRegion = null
+        return findCountryCode(region).also { currentCountryCode = it }
+    }
+
+    private fun findCountryCode(region: String): CountryCode =
+        service.findCountryCodeByRegion(context, region) ?: service.defaultCountryCode()
 }
@@ -29,4 +29,11 @@ internal interface CardPhoneNumberInputTransformerService :
     CardInputTransformer<CardComponentInput.CardPhoneNumberInput> {
     var currentCountryCode: CountryCode?
     fun injectPreset(region: String, number: String?): CardComponentInput.CardPhoneNumberInput
+
+    /**
+     * Apply the preset region injected before the phone number metadata is loaded.
+     *
+     * @return country code of the preset region, or null if there is nothing to apply.
+     */
+    fun applyPendingPreset(): CountryCode?
 }
@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.data
+
+import jp.pay.android.model.CountryCode
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.hamcrest.Matchers.`is`
+import org.junit.Test
+import java.util.Locale
+
+class CountryCodeSearchIndexTest {
+
+    private val japan = CountryCode("JP", 81, Locale.US)
+    private val andorra = CountryCode("AD", 376, Locale.US)
+    private val reunion = CountryCode("RE", 262, Locale.US)
+    private val index = CountryCodeSearchIndex(listOf(japan, andorra, reunion))
+
+    private fun search(query: String?) = index.search(query).map { it.countryCode }
+
+    @Test
+    fun search_blank_returns_all() {
+        assertThat(search(null), contains(japan, andorra, reunion))
+        assertThat(search(" "), contains(japan, andorra, reunion))
+    }
+
+    @Test
+    fun search_by_name_ignoring_case() {
+        assertThat(search("JAPAN"), contains(japan))
+    }
+
+    @Test
+    fun search_by_region_and_dial_code() {
+        assertThat(search("jp"), contains(japan))
+        assertThat(search("+81"), contains(japan))
+        assertThat(search("376"), contains(andorra))
+    }
+
+    @Test
+    fun search_ignoring_diacritics() {
+        assertThat(search("reunion"), contains(reunion))
+        assertThat(search("Réunion"), contains(reunion))
+    }
+
+    @Test
+    fun search_prefix_matches_first() {
+        // `an` is a prefix of Andorra and a substring of Japan.
+        assertThat(search("an"), contains(andorra, japan))
+    }
+
+    @Test
+    fun search_no_match() {
+        assertThat(search("xyz"), `is`(empty()))
+    }
+
+    @Test
+    fun description_is_localized() {
+        val entry = index.entries.first()
+        assertThat(entry.description, `is`("${japan.emoji} JP Japan (+81)"))
+    }
+
+    @Test
+    fun search_localized_name() {
+        val japanInJapanese = CountryCode("JP", 81, Locale.JAPANESE)
+        val index = CountryCodeSearchIndex(listOf(japanInJapanese))
+        assertThat(index.search("日本").map { it.countryCode }, contains(japanInJapanese))
+        assertThat(index.search("japan").map { it.countryCode }, contains(japanInJapanese))
+    }
+}
@@ -28,10 +28,13 @@ import androidx.test.ext.junit.runners.AndroidJUnit4
 import jp.pay.android.model.CountryCode
 import org.hamcrest.MatcherAssert.assertThat
 import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.hasItem
 import org.hamcrest.Matchers.nullValue
+import org.hamcrest.Matchers.sameInstance
 import org.junit.Test
 import org.junit.runner.RunWith
 import java.util.Locale
+import java.util.concurrent.Executor
 
 @RunWith(AndroidJUnit4::class)
 class PhoneNumberServiceImplTest {
@@ -65,4 +68,60 @@ class PhoneNumberServiceImplTest {
         val normalized = service.normalize(context, phoneNumber, countryCodeJP)
         assertThat(normalized, `is`(nullValue()))
     }
+
+    @Test
+    fun warmUp_loads_metadata_in_background() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val pending = mutableListOf<Runnable>()
+        val service = PhoneNumberServiceImpl(Locale.US, Executor { pending.add(it) })
+
+        service.warmUp(context)
+        service.warmUp(context)
+        assertThat(pending.size, `is`(1))
+
+        pending.single().run()
+        val countryCodeJP = CountryCode("JP", 81, Locale.US)
+        assertThat(service.normalize(context, "09012345678", countryCodeJP), `is`("+819012345678"))
+    }
+
+    @Test
+    fun normalize_before_warmUp_completes() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val pending = mutableListOf<Runnable>()
+        val service = PhoneNumberServiceImpl(Locale.US, Executor { pending.add(it) })
+        service.warmUp(context)
+
+        val countryCodeJP = CountryCode("JP", 81, Locale.US)
+        assertThat(service.normalize(context, "09012345678", countryCodeJP), `is`("+819012345678"))
+        // the queued warm-up does nothing once metadata is loaded.
+        pending.single().run()
+        assertThat(service.normalize(context, "09012345678", countryCodeJP), `is`("+819012345678"))
+    }
+
+    @Test
+    fun warmUp_builds_country_code_search_index() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val pending = mutableListOf<Runnable>()
+        val service = PhoneNumberServiceImpl(Locale.US, Executor { pending.add(it) })
+        service.warmUp(context)
+        pending.removeAt(0).run()
+
+        var index: CountryCodeSearchIndex? = null
+        service.getCountryCodeSearchIndex(context) { index = it }
+        assertThat(pending.size, `is`(0))
+        assertThat(index?.search("JP")?.first()?.countryCode?.region, `is`("JP"))
+        var another: CountryCodeSearchIndex? = null
+        service.getCountryCodeSearchIndex(context) { another = it }
+        assertThat(another, `is`(sameInstance(index)))
+    }
+
+    @Test
+    fun findCountryCodeByRegion_returns_shared_instance() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val service = PhoneNumberServiceImpl(Locale.US)
+        val countryCode = checkNotNull(service.findCountryCodeByRegion(context, "US"))
+        assertThat(countryCode.code, `is`(1))
+        assertThat(service.findCountryCodeByRegion(context, "US"), `is`(sameInstance(countryCode)))
+        assertThat(service.getAllCountryCodes(context), hasItem(sameInstance(countryCode)))
+    }
 }
@@ -38,7 +38,7 @@ import org.junit.Test
 import org.junit.runner.RunWith
 import org.mockito.Mock
 import org.mockito.Mockito.`when`
-import org.mockito.Mockito.anyString
+import org.mockito.Mockito.anyInt
 import org.mockito.MockitoAnnotations
 import org.robolectric.ParameterizedRobolectricTestRunner
 
@@ -248,11 +248,11 @@ internal class CardNumberInputTest(
     @Before
     fun setUp() {
         MockitoAnnotations.openMocks(this)
-        `when`(mockDetector.detectWithDigits(anyString())).thenReturn(data.detectedBrand)
-        `when`(mockNumberValidator.isCardNumberLengthValid(anyString(), anyNullable())).thenReturn(
+        `when`(mockDetector.detectWithDigits(anyNullable())).thenReturn(data.detectedBrand)
+        `when`(mockNumberValidator.isCardNumberLengthValid(anyNullable(), anyNullable())).thenReturn(
             data.isLengthValid
         )
-        `when`(mockNumberValidator.isLuhnValid(anyString())).thenReturn(data.isLuhnValid)
+        `when`(mockNumberValidator.isLuhnSumValid(anyInt())).thenReturn(data.isLuhnValid)
         val transformer = CardNumberInputTransformer(mockDetector, mockNumberValidator)
         transformer.acceptedBrands = data.acceptedBrands
         input = transformer.transform(data.input)
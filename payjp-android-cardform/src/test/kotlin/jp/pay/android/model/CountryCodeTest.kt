@@ -25,6 +25,9 @@ package jp.pay.android.model
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import org.hamcrest.MatcherAssert.assertThat
 import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.not
+import org.hamcrest.Matchers.nullValue
+import org.hamcrest.Matchers.sameInstance
 import org.junit.Test
 import org.junit.runner.RunWith
 import java.util.Locale
@@ -49,4 +52,22 @@ class CountryCodeTest {
         val countryCode = CountryCode("JP", 81, Locale("en"))
         assertThat(countryCode.searchDescription, `is`("🇯🇵 JP Japan (+81)"))
     }
+
+    @Test
+    fun emoji_lowercase_region() {
+        assertThat(CountryCode.createEmoji("us"), `is`("🇺🇸"))
+    }
+
+    @Test
+    fun emoji_invalid_region() {
+        assertThat(CountryCode.createEmoji("001"), `is`(nullValue()))
+    }
+
+    @Test
+    fun of_returns_shared_instance() {
+        val countryCode = CountryCode.of("JP", 81, Locale("en"))
+        assertThat(CountryCode.of("JP", 81, Locale("en")), `is`(sameInstance(countryCode)))
+        assertThat(CountryCode.of("JP", 81, Locale("ja")), `is`(not(sameInstance(countryCode))))
+        assertThat(countryCode, `is`(CountryCode("JP", 81, Locale("en"))))
+    }
 }
@@ -53,6 +53,7 @@ import org.hamcrest.Matchers.nullValue
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.ArgumentCaptor
 import org.mockito.Mock
 import org.mockito.Mockito.`when`
 import org.mockito.Mockito.anyBoolean
@@ -62,6 +63,9 @@ import org.mockito.Mockito.reset
 import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
 import org.mockito.MockitoAnnotations
+import org.robolectric.shadows.ShadowLooper
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
 
 @RunWith(AndroidJUnit4::class)
 internal class CardFormViewModelTest {
@@ -97,6 +101,7 @@ internal class CardFormViewModelTest {
             ExtraAttribute.Email(),
             ExtraAttribute.Phone("JP"),
         ),
+        validationScheduler: CardFormValidationScheduler = CardFormValidationScheduler.Immediate,
     ) = CardFormViewModel(
         tokenService = mockTokenService,
         cardNumberInputTransformer = cardNumberInputTransformer,
@@ -109,6 +114,7 @@ internal class CardFormViewModelTest {
         acceptedBrandsPreset = acceptedBrandList,
         phoneNumberService = mockPhoneNumberService,
         extraAttributes = extraAttributes,
+        validationScheduler = validationScheduler,
     ).apply {
         cardNumberError.observeForever { }
         cardExpirationError.observeForever { }
@@ -367,6 +373,50 @@ internal class CardFormViewModelTest {
         }
     }
 
+    @Test
+    fun isValid_if_both_phone_and_email_is_enabled_not_allow_phone_pending() {
+        val robot = CardRobot.SandboxVisa
+        mockCorrectInput()
+        reset(cardPhoneNumberInputTransformer)
+        `when`(cardPhoneNumberInputTransformer.transform(anyString()))
+            .thenReturn(CardComponentInput.CardPhoneNumberInput(robot.phoneNumber, null, null, pending = true))
+        createViewModel(extraAttributes = listOf(ExtraAttribute.Email(), ExtraAttribute.Phone("JP"))).run {
+            inputCardNumber(robot.number)
+            inputCardExpiration(robot.exp)
+            inputCardCvc(robot.cvc)
+            inputCardHolderName(robot.name)
+            inputEmail(robot.email)
+            inputPhoneNumber(robot.phoneNumber)
+            assertThat(isValid.value, `is`(false))
+        }
+    }
+
+    @Test
+    fun pending_phone_number_is_validated_when_phone_number_service_is_ready() {
+        val robot = CardRobot.SandboxVisa
+        mockCorrectInput()
+        reset(cardPhoneNumberInputTransformer)
+        `when`(cardPhoneNumberInputTransformer.transform(anyString()))
+            .thenReturn(CardComponentInput.CardPhoneNumberInput(robot.phoneNumber, null, null, pending = true))
+        createViewModel(extraAttributes = listOf(ExtraAttribute.Phone("JP"))).run {
+            val listener = ArgumentCaptor.forClass(Runnable::class.java)
+            verify(mockPhoneNumberService).addOnReadyListener(listener.capture())
+            inputCardNumber(robot.number)
+            inputCardExpiration(robot.exp)
+            inputCardCvc(robot.cvc)
+            inputCardHolderName(robot.name)
+            inputPhoneNumber(robot.phoneNumber)
+            assertThat(isValid.value, `is`(false))
+
+            `when`(cardPhoneNumberInputTransformer.transform(anyString()))
+                .thenReturn(CardComponentInput.CardPhoneNumberInput(robot.phoneNumber, "+819012345678", null))
+            listener.value.run()
+
+            assertThat(cardPhoneNumberInput.value?.value, `is`("+819012345678"))
+            assertThat(isValid.value, `is`(true))
+        }
+    }
+
     @Test
     fun cardNumberError_lazy() {
         val errorId = 0
@@ -699,4 +749,98 @@ internal class CardFormViewModelTest {
             )
         }
     }
+
+    @Test
+    fun inputPhoneNumber_validates_latest_input_after_debounce() {
+        val robot = CardRobot.SandboxVisa
+        mockCorrectInput()
+        createViewModel(
+            validationScheduler = HandlerValidationScheduler(executor = Executor { it.run() })
+        ).run {
+            inputCardNumber(robot.number)
+            inputCardExpiration(robot.exp)
+            inputCardCvc(robot.cvc)
+            inputCardHolderName(robot.name)
+            inputEmail(robot.email)
+            ShadowLooper.idleMainLooper()
+            reset(cardPhoneNumberInputTransformer)
+            `when`(cardPhoneNumberInputTransformer.transform(anyString()))
+                .thenReturn(CardComponentInput.CardPhoneNumberInput("09012345678", "+819012345678", null))
+            inputPhoneNumber("0")
+            inputPhoneNumber("09")
+            inputPhoneNumber(robot.phoneNumber)
+            assertThat(cardPhoneNumberInput.value, nullValue())
+
+            ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS)
+            verify(cardPhoneNumberInputTransformer).transform(robot.phoneNumber)
+            verify(cardPhoneNumberInputTransformer, never()).transform("0")
+            assertThat(cardPhoneNumberInput.value?.value, `is`("+819012345678"))
+            assertThat(isValid.value, `is`(true))
+        }
+    }
+
+    @Test
+    fun validate_updates_isValid_with_pending_phone_number() {
+        val robot = CardRobot.SandboxVisa
+        mockCorrectInput()
+        createViewModel(
+            extraAttributes = listOf(ExtraAttribute.Phone("JP")),
+            validationScheduler = HandlerValidationScheduler(executor = Executor { it.run() })
+        ).run {
+            inputCardNumber(robot.number)
+            inputCardExpiration(robot.exp)
+            inputCardCvc(robot.cvc)
+            inputCardHolderName(robot.name)
+            ShadowLooper.idleMainLooper()
+            inputPhoneNumber(robot.phoneNumber)
+            assertThat(isValid.value, `is`(false))
+
+            // without running the main looper, i.e. before the debounce and the coalesced update.
+            validate()
+
+            assertThat(isValid.value, `is`(true))
+        }
+    }
+
+    @Test
+    fun createToken_validates_pending_phone_number() {
+        `when`(
+            mockTokenService.createToken(
+                number = anyString(),
+                cvc = anyString(),
+                expMonth = anyString(),
+                expYear = anyString(),
+                name = anyString(),
+                tenantId = anyNullable(),
+                email = anyString(),
+                phone = anyString(),
+                threeDSecure = anyBoolean(),
+            )
+        )
+            .thenReturn(Tasks.success(TestStubs.newToken()))
+        val robot = CardRobot.SandboxVisa
+        mockCorrectInput()
+        createViewModel(
+            validationScheduler = HandlerValidationScheduler(executor = Executor { it.run() })
+        ).run {
+            inputCardNumber(robot.number)
+            inputCardExpiration(robot.exp)
+            inputCardCvc(robot.cvc)
+            inputCardHolderName(robot.name)
+            inputEmail(robot.email)
+            inputPhoneNumber(robot.phoneNumber)
+            createToken(useThreeDSecure = false).run()
+            verify(mockTokenService).createToken(
+                number = "4242424242424242",
+                expMonth = "12",
+                expYear = "2030",
+                cvc = "123",
+                name = "JANE DOE",
+                tenantId = null,
+                email = "test@example.com",
+                phone = "+819012345678",
+                threeDSecure = false,
+            )
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.ui.widget
+
+import android.widget.EditText
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.CardBrand
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class CardNumberFormatTextWatcherEditTest {
+
+    private lateinit var textWatcher: CardNumberFormatTextWatcher
+    private lateinit var editText: EditText
+
+    @Before
+    fun setUp() {
+        textWatcher = CardNumberFormatTextWatcher(' ')
+        editText = EditText(ApplicationProvider.getApplicationContext())
+        editText.addTextChangedListener(textWatcher)
+    }
+
+    private fun type(chars: String) {
+        chars.forEach { editText.text.append(it) }
+    }
+
+    private fun deleteLast(count: Int) {
+        repeat(count) {
+            val length = editText.text.length
+            editText.text.delete(length - 1, length)
+        }
+    }
+
+    @Test
+    fun typing_inserts_delimiters() {
+        type("4242")
+        assertThat(editText.text.toString(), `is`("4242 "))
+        type("424242424242")
+        assertThat(editText.text.toString(), `is`("4242 4242 4242 4242"))
+        assertThat(editText.selectionStart, `is`(19))
+    }
+
+    @Test
+    fun typing_ignores_extra_digits() {
+        type("42424242424242424")
+        assertThat(editText.text.toString(), `is`("4242 4242 4242 4242"))
+    }
+
+    @Test
+    fun typing_amex() {
+        textWatcher.brand = CardBrand.AMEX
+        type("378282246310005")
+        assertThat(editText.text.toString(), `is`("3782 822463 10005"))
+    }
+
+    @Test
+    fun delete_removes_trailing_delimiter() {
+        type("4242424242424242")
+        deleteLast(4)
+        assertThat(editText.text.toString(), `is`("4242 4242 4242"))
+        assertThat(editText.selectionStart, `is`(14))
+    }
+
+    @Test
+    fun delete_delimiter_removes_previous_digit() {
+        type("4242")
+        deleteLast(1)
+        assertThat(editText.text.toString(), `is`("424"))
+    }
+
+    @Test
+    fun delete_all() {
+        type("4242424242424242")
+        deleteLast(16)
+        assertThat(editText.text.toString(), `is`(""))
+    }
+
+    @Test
+    fun paste_in_middle_reformats_following_digits() {
+        type("42424242")
+        editText.text.insert(2, "99")
+        assertThat(editText.text.toString(), `is`("4299 4242 42"))
+    }
+
+    @Test
+    fun paste_non_digits() {
+        editText.text.append("4242-4242-4242-4242")
+        assertThat(editText.text.toString(), `is`("4242 4242 4242 4242"))
+    }
+}
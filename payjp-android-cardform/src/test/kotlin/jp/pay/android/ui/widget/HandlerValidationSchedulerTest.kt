@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.ui.widget
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.hamcrest.Matchers.`is`
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.shadows.ShadowLooper
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+class HandlerValidationSchedulerTest {
+
+    private lateinit var scheduler: HandlerValidationScheduler
+    private val validated = mutableListOf<String>()
+    private val results = mutableListOf<String>()
+
+    @Before
+    fun setUp() {
+        scheduler = HandlerValidationScheduler(executor = Executor { it.run() })
+    }
+
+    private fun debounce(input: String) {
+        scheduler.debounce(
+            key = KEY,
+            delayMillis = 100,
+            validate = { input.also { validated.add(it) } },
+            onResult = { results.add(it) }
+        )
+    }
+
+    @Test
+    fun debounce_runs_latest_request_after_delay() {
+        debounce("0")
+        debounce("09")
+        debounce("090")
+        ShadowLooper.idleMainLooper(99, TimeUnit.MILLISECONDS)
+        assertThat(validated, `is`(empty()))
+
+        ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS)
+        assertThat(validated, contains("090"))
+        assertThat(results, contains("090"))
+    }
+
+    @Test
+    fun cancel_drops_pending_request() {
+        debounce("0")
+        scheduler.cancel(KEY)
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS)
+        assertThat(validated, `is`(empty()))
+        assertThat(results, `is`(empty()))
+    }
+
+    @Test
+    fun coalesce_runs_action_once_per_turn() {
+        var count = 0
+        repeat(8) { scheduler.coalesce(KEY) { count++ } }
+        assertThat(count, `is`(0))
+        ShadowLooper.idleMainLooper()
+        assertThat(count, `is`(1))
+
+        scheduler.coalesce(KEY) { count++ }
+        ShadowLooper.idleMainLooper()
+        assertThat(count, `is`(2))
+    }
+
+    @Test
+    fun shutdown_drops_pending_work() {
+        var count = 0
+        debounce("0")
+        scheduler.coalesce(KEY) { count++ }
+        scheduler.shutdown()
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS)
+        assertThat(results, `is`(empty()))
+        assertThat(count, `is`(0))
+    }
+
+    private companion object {
+        val KEY = Any()
+    }
+}
@@ -109,7 +109,12 @@ class CardBrandDetectorTest(
                 arrayOf("6511222233334444", CardBrand.DISCOVER),
                 arrayOf("65112222333344445555", CardBrand.DISCOVER),
                 arrayOf("65", CardBrand.DISCOVER),
-                arrayOf("650", CardBrand.DISCOVER)
+                arrayOf("650", CardBrand.DISCOVER),
+                // non digits
+                arrayOf("", CardBrand.UNKNOWN),
+                arrayOf("4242 4242", CardBrand.UNKNOWN),
+                arrayOf("a4242", CardBrand.UNKNOWN),
+                arrayOf("3530x", CardBrand.UNKNOWN)
             )
         }
     }
@@ -118,4 +123,19 @@ class CardBrandDetectorTest(
     fun detectBrand() {
         assertThat("digits = $digits", CardBrandDetector.detectWithDigits(digits), `is`(brand))
     }
+
+    @Test
+    fun detectBrandFromCharSequence() {
+        assertThat(
+            "digits = $digits",
+            CardBrandDetector.detectWithDigits(StringBuilder(digits)),
+            `is`(brand)
+        )
+    }
+
+    @Test
+    fun detectBrandSameAsNumberRegex() {
+        val expected = CardBrand.entries.firstOrNull { it.numberRegex.matches(digits) } ?: CardBrand.UNKNOWN
+        assertThat("digits = $digits", CardBrandDetector.detectWithDigits(digits), `is`(expected))
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.validator
+
+import jp.pay.android.R
+import jp.pay.android.model.CardBrand
+import jp.pay.android.model.FormInputError
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.ParameterizedRobolectricTestRunner
+
+/**
+ * [CardNumberInputTransformer] with the real [CardNumberValidator],
+ * to check the Luhn sum accumulated in a single scan for both even and odd lengths.
+ */
+@RunWith(ParameterizedRobolectricTestRunner::class)
+internal class CardNumberInputTransformerLuhnTest(
+    private val input: String,
+    private val brand: CardBrand,
+    private val isLuhnValid: Boolean
+) {
+
+    companion object {
+        @JvmStatic
+        @ParameterizedRobolectricTestRunner.Parameters
+        fun data(): List<Array<out Any?>> {
+            return listOf(
+                // even length
+                arrayOf("4200250796648831", CardBrand.VISA, true),
+                arrayOf("4929 6134 2795 2262", CardBrand.VISA, true),
+                arrayOf("4929610527143692", CardBrand.VISA, false),
+                arrayOf("5269-2784-8873-7492", CardBrand.MASTER_CARD, true),
+                arrayOf("5589306849102132", CardBrand.MASTER_CARD, false),
+                arrayOf("36868003801279", CardBrand.DINERS_CLUB, true),
+                arrayOf("3626 760841 3862", CardBrand.DINERS_CLUB, false),
+                // odd length
+                arrayOf("346191816620108", CardBrand.AMEX, true),
+                arrayOf("3411 791420 96577", CardBrand.AMEX, true),
+                arrayOf("372086951160373", CardBrand.AMEX, false)
+            )
+        }
+    }
+
+    private val transformer = CardNumberInputTransformer()
+
+    @Test
+    fun luhn_sum_matches_validator() {
+        val digits = input.filter { Character.isDigit(it) }
+        assertThat(CardNumberValidator.isLuhnValid(digits), `is`(isLuhnValid))
+    }
+
+    @Test
+    fun transform() {
+        val result = transformer.transform(input)
+        assertThat("input $input", result.brand, `is`(brand))
+        if (isLuhnValid) {
+            assertThat("input $input", result.errorMessage, `is`(nullValue()))
+            assertThat("input $input", result.value, `is`(input.filter { Character.isDigit(it) }))
+        } else {
+            assertThat(
+                "input $input",
+                result.errorMessage,
+                `is`(FormInputError(messageId = R.string.payjp_card_form_error_invalid_number, lazy = false))
+            )
+            assertThat("input $input", result.value, `is`(nullValue()))
+        }
+    }
+}
@@ -31,6 +31,7 @@ import jp.pay.android.model.CountryCode
 import jp.pay.android.model.FormInputError
 import org.hamcrest.MatcherAssert.assertThat
 import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.notNullValue
 import org.hamcrest.Matchers.nullValue
 import org.junit.Before
 import org.junit.Test
@@ -38,6 +39,8 @@ import org.junit.runner.RunWith
 import org.mockito.Mock
 import org.mockito.Mockito.`when`
 import org.mockito.Mockito.anyString
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
 import org.mockito.MockitoAnnotations
 import java.util.Locale
 
@@ -50,6 +53,7 @@ class CardPhoneNumberInputTransformerTest {
     @Before
     fun setUp() {
         MockitoAnnotations.openMocks(this)
+        `when`(mockPhoneNumberService.isReady()).thenReturn(true)
     }
 
     @Test
@@ -109,4 +113,41 @@ class CardPhoneNumberInputTransformerTest {
         assertThat(result.value, `is`(nullValue()))
         assertThat(result.errorMessage, `is`(FormInputError(R.string.payjp_card_form_error_invalid_phone_number, false)))
     }
+
+    @Test
+    fun transform_pending_until_service_is_ready() {
+        `when`(mockPhoneNumberService.isReady()).thenReturn(false)
+        val transformer = CardPhoneNumberInputTransformer(
+            context = ApplicationProvider.getApplicationContext(),
+            service = mockPhoneNumberService
+        ).apply {
+            currentCountryCode = CountryCode("JP", 81, Locale.US)
+        }
+        val result = transformer.transform("09012345678")
+        assertThat(result.value, `is`(nullValue()))
+        assertThat(result.errorMessage, `is`(nullValue()))
+        assertThat(result.pending, `is`(true))
+        verify(mockPhoneNumberService, never()).normalize(anyNullable(), anyString(), anyNullable())
+    }
+
+    @Test
+    fun injectPreset_applies_region_when_service_is_ready() {
+        `when`(mockPhoneNumberService.isReady()).thenReturn(false)
+        val transformer = CardPhoneNumberInputTransformer(
+            context = ApplicationProvider.getApplicationContext(),
+            service = mockPhoneNumberService
+        )
+        val countryCode = CountryCode("US", 1, Locale.US)
+        `when`(mockPhoneNumberService.findCountryCodeByRegion(anyNullable(), anyString())).thenReturn(countryCode)
+
+        val result = transformer.injectPreset("US", "2015550123")
+        assertThat(result.pending, `is`(true))
+        assertThat(transformer.currentCountryCode, `is`(nullValue()))
+        assertThat(transformer.applyPendingPreset(), `is`(nullValue()))
+
+        `when`(mockPhoneNumberService.isReady()).thenReturn(true)
+        assertThat(transformer.applyPendingPreset(), `is`(notNullValue()))
+        assertThat(transformer.currentCountryCode, `is`(countryCode))
+        assertThat(transformer.applyPendingPreset(), `is`(nullValue()))
+    }
 }
@@ -0,0 +1,317 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import android.os.SystemClock
+import jp.pay.android.model.CardBrandsAcceptedResponse
+import jp.pay.android.model.TenantId
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-memory cache of accepted brands for each tenant.
+ *
+ * - The response younger than [ttlMillis] is returned without request.
+ * - The response younger than [ttlMillis] + [staleWhileRevalidateMillis] is returned immediately,
+ *   and a new one is fetched in background.
+ * - Concurrent requests for the same tenant share a single request.
+ * - If [store] is given, the brands saved in the file are loaded on [ioExecutor] at first,
+ *   and they are returned immediately but always revalidated.
+ *
+ * @param ttlMillis time to keep the response fresh.
+ * @param staleWhileRevalidateMillis time to keep serving the stale response while revalidating.
+ * @param callbackExecutor executor to run callback.
+ * @param logger logger
+ * @param clock monotonic clock in milliseconds.
+ * @param store optional file storage.
+ * @param ioExecutor executor to access [store].
+ * @param loader fetch accepted brands from api.
+ */
+@Suppress("LongParameterList")
+internal class AcceptedBrandsCache(
+    private val ttlMillis: Long,
+    private val staleWhileRevalidateMillis: Long,
+    private val callbackExecutor: Executor,
+    private val logger: PayjpLogger = PayjpLogger.None,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+    private val store: AcceptedBrandsStore? = null,
+    private val ioExecutor: Executor? = null,
+    private val loader: (tenantId: TenantId?) -> Task<CardBrandsAcceptedResponse>
+) {
+
+    /**
+     * @param persisted true if it is loaded from [store].
+     */
+    private class Entry(
+        val response: CardBrandsAcceptedResponse,
+        val fetchedAt: Long,
+        val persisted: Boolean = false
+    )
+
+    private val lock = Any()
+    private val entries = HashMap<TenantId?, Entry>()
+    private val flights = HashMap<TenantId?, Flight>()
+    private val hitCount = AtomicLong()
+    private val staleHitCount = AtomicLong()
+    private val diskHitCount = AtomicLong()
+    private val missCount = AtomicLong()
+
+    init {
+        if (store != null && ioExecutor != null && ttlMillis > 0) {
+            ioExecutor.execute {
+                val loaded = store.load()
+                synchronized(lock) {
+                    loaded.forEach { (tenantId, response) ->
+                        if (!entries.containsKey(tenantId)) {
+                            entries[tenantId] = Entry(response, clock(), persisted = true)
+                        }
+                    }
+                }
+                logger.d("loaded accepted brands for ${loaded.size} tenant(s) from file")
+            }
+        }
+    }
+
+    /**
+     * Get accepted brands task backed by the cache.
+     *
+     * @param tenantId tenant id
+     * @return task of accepted brands
+     */
+    fun get(tenantId: TenantId?): Task<CardBrandsAcceptedResponse> =
+        if (ttlMillis > 0) CachedTask(tenantId) else loader(tenantId)
+
+    /**
+     * Put the response into the cache.
+     *
+     * @param tenantId tenant id
+     * @param response response
+     */
+    fun put(tenantId: TenantId?, response: CardBrandsAcceptedResponse) {
+        synchronized(lock) {
+            entries[tenantId] = Entry(response, clock())
+        }
+    }
+
+    /**
+     * Clear all cached responses.
+     */
+    fun clear() {
+        synchronized(lock) {
+            entries.clear()
+        }
+    }
+
+    /**
+     * Get statistics of the cache.
+     *
+     * @return stats
+     */
+    fun stats(): AcceptedBrandsCacheStats = AcceptedBrandsCacheStats(
+        hitCount = hitCount.get(),
+        staleHitCount = staleHitCount.get(),
+        diskHitCount = diskHitCount.get(),
+        missCount = missCount.get()
+    )
+
+    /**
+     * Result of [lookup].
+     */
+    private sealed class Lookup {
+        class Hit(val response: CardBrandsAcceptedResponse) : Lookup()
+        class Wait(val flight: AcceptedBrandsCache.Flight, val leader: Boolean) : Lookup()
+    }
+
+    /**
+     * Find the available response, or join the request in flight.
+     * If there is no request in flight, a new flight is created and the caller must start it.
+     *
+     * @param tenantId tenant id
+     * @param callback callback to join the flight if no response available.
+     * @return the cached response, or the flight to wait.
+     */
+    private fun lookup(
+        tenantId: TenantId?,
+        callback: Task.Callback<CardBrandsAcceptedResponse>?
+    ): Lookup {
+        var revalidation: Flight? = null
+        val found = synchronized(lock) {
+            val entry = entries[tenantId]
+            val age = entry?.let { clock() - it.fetchedAt } ?: Long.MAX_VALUE
+            when {
+                entry != null && !entry.persisted && age < ttlMillis -> {
+                    hitCount.incrementAndGet()
+                    Lookup.Hit(entry.response)
+                }
+                entry != null && (entry.persisted || age - ttlMillis < staleWhileRevalidateMillis) -> {
+                    (if (entry.persisted) diskHitCount else staleHitCount).incrementAndGet()
+                    if (!flights.containsKey(tenantId)) {
+                        revalidation = Flight(tenantId).also { flights[tenantId] = it }
+                    }
+                    Lookup.Hit(entry.response)
+                }
+                else -> {
+                    missCount.incrementAndGet()
+                    val flight = flights[tenantId]
+                    val wait = if (flight != null) {
+                        Lookup.Wait(flight, leader = false)
+                    } else {
+                        Lookup.Wait(Flight(tenantId).also { flights[tenantId] = it }, leader = true)
+                    }
+                    callback?.let(wait.flight.callbacks::add)
+                    wait
+                }
+            }
+        }
+        revalidation?.let { flight ->
+            logger.d("revalidate accepted brands for tenant $tenantId")
+            flight.launch()
+        }
+        return found
+    }
+
+    private fun leave(flight: Flight, callback: Task.Callback<CardBrandsAcceptedResponse>) {
+        synchronized(lock) {
+            flight.callbacks.remove(callback)
+        }
+    }
+
+    /**
+     * A single request shared by concurrent callers.
+     */
+    private inner class Flight(private val tenantId: TenantId?) {
+        val callbacks = mutableListOf<Task.Callback<CardBrandsAcceptedResponse>>()
+        private val latch = CountDownLatch(1)
+        @Volatile private var result: Result<CardBrandsAcceptedResponse>? = null
+
+        fun launch() {
+            loader(tenantId).enqueue(
+                object : Task.Callback<CardBrandsAcceptedResponse> {
+                    override fun onSuccess(data: CardBrandsAcceptedResponse) {
+                        complete(Result.success(data), onCallbackExecutor = true)
+                    }
+
+                    override fun onError(throwable: Throwable) {
+                        complete(Result.failure(throwable), onCallbackExecutor = true)
+                    }
+                }
+            )
+        }
+
+        fun runBlocking(): CardBrandsAcceptedResponse {
+            // complete with any throwable, otherwise the followers wait forever.
+            val result = try {
+                Result.success(loader(tenantId).run())
+            } catch (t: Throwable) {
+                Result.failure(t)
+            }
+            complete(result, onCallbackExecutor = false)
+            return result.getOrThrow()
+        }
+
+        fun await(): CardBrandsAcceptedResponse {
+            latch.await()
+            return checkNotNull(result).getOrThrow()
+        }
+
+        private fun complete(result: Result<CardBrandsAcceptedResponse>, onCallbackExecutor: Boolean) {
+            var snapshot: Map<TenantId?, CardBrandsAcceptedResponse>? = null
+            var unchanged: Set<TenantId?> = emptySet()
+            val waiting = synchronized(lock) {
+                flights.remove(tenantId)
+                result.getOrNull()?.let { entries[tenantId] = Entry(it, clock()) }
+                if (result.isSuccess && store != null) {
+                    snapshot = entries.mapValues { (_, entry) -> entry.response }
+                    unchanged = entries.filterValues { it.persisted }.keys.toSet()
+                }
+                this.result = result
+                callbacks.toList().also { callbacks.clear() }
+            }
+            latch.countDown()
+            snapshot?.let { brands ->
+                try {
+                    ioExecutor?.execute { store?.save(brands, unchanged) }
+                } catch (e: RejectedExecutionException) {
+                    logger.w("skip saving accepted brands after shutdown.", e)
+                }
+            }
+            result.exceptionOrNull()?.let { logger.w("failed to fetch accepted brands", it) }
+            if (waiting.isEmpty()) {
+                return
+            }
+            val notify = Runnable {
+                waiting.forEach { callback ->
+                    result.fold(callback::onSuccess, callback::onError)
+                }
+            }
+            if (onCallbackExecutor) notify.run() else callbackExecutor.execute(notify)
+        }
+    }
+
+    private inner class CachedTask(private val tenantId: TenantId?) : Task<CardBrandsAcceptedResponse> {
+        @Volatile private var executed = false
+        @Volatile private var canceled = false
+        @Volatile private var joined: Pair<Flight, Task.Callback<CardBrandsAcceptedResponse>>? = null
+
+        override fun run(): CardBrandsAcceptedResponse {
+            executed = true
+            return when (val found = lookup(tenantId, null)) {
+                is Lookup.Hit -> found.response
+                is Lookup.Wait -> if (found.leader) found.flight.runBlocking() else found.flight.await()
+            }
+        }
+
+        override fun enqueue(callback: Task.Callback<CardBrandsAcceptedResponse>) {
+            executed = true
+            val wrapped = object : Task.Callback<CardBrandsAcceptedResponse> {
+                override fun onSuccess(data: CardBrandsAcceptedResponse) {
+                    if (!canceled) callback.onSuccess(data)
+                }
+
+                override fun onError(throwable: Throwable) {
+                    if (!canceled) callback.onError(throwable)
+                }
+            }
+            when (val found = lookup(tenantId, wrapped)) {
+                is Lookup.Hit -> callbackExecutor.execute { wrapped.onSuccess(found.response) }
+                is Lookup.Wait -> {
+                    joined = found.flight to wrapped
+                    if (found.leader) {
+                        found.flight.launch()
+                    }
+                }
+            }
+        }
+
+        override fun isExecuted(): Boolean = executed
+
+        override fun cancel() {
+            canceled = true
+            joined?.let { (flight, callback) -> leave(flight, callback) }
+        }
+
+        override fun isCanceled(): Boolean = canceled
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+/**
+ * Statistics of the accepted brands cache.
+ *
+ * @param hitCount number of requests served by the fresh cache.
+ * @param staleHitCount number of requests served by the expired cache while revalidating.
+ * @param diskHitCount number of requests served by the brands saved in the file.
+ * @param missCount number of requests waited for the api.
+ */
+data class AcceptedBrandsCacheStats(
+    val hitCount: Long,
+    val staleHitCount: Long,
+    val diskHitCount: Long,
+    val missCount: Long
+) {
+
+    /**
+     * total number of requests.
+     */
+    val requestCount: Long
+        get() = hitCount + staleHitCount + diskHitCount + missCount
+
+    companion object {
+        @JvmField
+        val EMPTY = AcceptedBrandsCacheStats(0, 0, 0, 0)
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import androidx.annotation.WorkerThread
+import com.squareup.moshi.Json
+import com.squareup.moshi.JsonClass
+import com.squareup.moshi.Moshi
+import jp.pay.android.model.CardBrand
+import jp.pay.android.model.CardBrandsAcceptedResponse
+import jp.pay.android.model.TenantId
+import jp.pay.android.network.TokenApiClientFactory
+import okio.buffer
+import okio.sink
+import okio.source
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+
+/**
+ * File storage of accepted brands.
+ * It keeps the last known brands of all tenants for the public key in one JSON file,
+ * so that the card form can be shown without waiting for the api on cold start.
+ * Each entry records when it is saved, and the entries older than [maxAgeMillis] are dropped on load.
+ *
+ * @param directory directory to save the file.
+ * @param publicKey public key
+ * @param maxAgeMillis max age of the saved entries.
+ * @param moshi moshi
+ * @param logger logger
+ * @param clock wall clock in milliseconds.
+ */
+internal class AcceptedBrandsStore(
+    directory: File,
+    publicKey: String,
+    private val maxAgeMillis: Long = PayjpTokenConfiguration.DEFAULT_ACCEPTED_BRANDS_DISK_CACHE_MAX_AGE_MILLIS,
+    moshi: Moshi = TokenApiClientFactory.moshi,
+    private val logger: PayjpLogger = PayjpLogger.None,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    private val file = File(directory, "payjp_accepted_brands_${sha256(publicKey)}.json")
+    private val adapter = moshi.adapter(AcceptedBrandsSnapshot::class.java)
+    // saved time of the loaded entries, to keep it when they are saved again without being fetched.
+    @Volatile
+    private var loadedSavedAt: Map<TenantId?, Long> = emptyMap()
+
+    /**
+     * Load saved brands.
+     *
+     * @return brands for each tenant. empty if there is no file or it is broken.
+     * The entries older than [maxAgeMillis], or saved by an old version without the saved time, are excluded.
+     */
+    @WorkerThread
+    fun load(): Map<TenantId?, CardBrandsAcceptedResponse> = try {
+        val now = clock()
+        val entries = file.takeIf { it.exists() }
+            ?.source()?.buffer()?.use { adapter.fromJson(it) }
+            ?.entries
+            .orEmpty()
+        val fresh = entries.filter { entry -> entry.savedAt != null && now - entry.savedAt in 0..maxAgeMillis }
+        if (fresh.size < entries.size) {
+            logger.d("dropped ${entries.size - fresh.size} expired accepted brands from ${file.name}")
+        }
+        loadedSavedAt = fresh.associate { entry -> entry.tenant?.let(::TenantId) to checkNotNull(entry.savedAt) }
+        fresh.associate { entry ->
+            entry.tenant?.let(::TenantId) to CardBrandsAcceptedResponse(entry.brands, entry.livemode)
+        }
+    } catch (e: IOException) {
+        logger.w("failed to load accepted brands from ${file.name}", e)
+        emptyMap()
+    } catch (e: RuntimeException) {
+        // JsonDataException or unknown brand from old version
+        logger.w("failed to parse accepted brands from ${file.name}", e)
+        emptyMap()
+    }
+
+    /**
+     * Save brands. The file is replaced atomically.
+     *
+     * @param brands brands for each tenant.
+     * @param unchanged tenants whose brands are the ones loaded by [load], to keep their saved time.
+     */
+    @WorkerThread
+    fun save(brands: Map<TenantId?, CardBrandsAcceptedResponse>, unchanged: Set<TenantId?> = emptySet()) {
+        val now = clock()
+        val savedAt = brands.keys.associateWith { tenantId ->
+            loadedSavedAt[tenantId]?.takeIf { tenantId in unchanged } ?: now
+        }
+        val snapshot = AcceptedBrandsSnapshot(
+            entries = brands.map { (tenantId, response) ->
+                AcceptedBrandsSnapshot.Entry(tenantId?.id, response.brands, response.livemode, savedAt[tenantId])
+            }
+        )
+        val temp = File(file.parentFile, "${file.name}.tmp")
+        try {
+            file.parentFile?.mkdirs()
+            temp.sink().buffer().use { adapter.toJson(it, snapshot) }
+            if (!temp.renameTo(file)) {
+                throw IOException("failed to rename ${temp.name}")
+            }
+            loadedSavedAt = savedAt.filterKeys { it in unchanged }
+        } catch (e: IOException) {
+            logger.w("failed to save accepted brands to ${file.name}", e)
+            temp.delete()
+        }
+    }
+
+    private fun sha256(value: String): String =
+        MessageDigest.getInstance("SHA-256")
+            .digest(value.toByteArray(Charsets.UTF_8))
+            .joinToString(separator = "") { "%02x".format(it) }
+}
+
+/**
+ * JSON format of [AcceptedBrandsStore].
+ */
+@JsonClass(generateAdapter = true)
+internal data class AcceptedBrandsSnapshot(val entries: List<Entry>) {
+
+    @JsonClass(generateAdapter = true)
+    internal data class Entry(
+        val tenant: String?,
+        @Json(name = "card_types_supported") val brands: List<CardBrand>,
+        val livemode: Boolean,
+        // wall clock in milliseconds. null if saved by an old version.
+        @Json(name = "saved_at") val savedAt: Long? = null
+    )
+}
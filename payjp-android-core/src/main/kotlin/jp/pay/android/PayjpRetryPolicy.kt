@@ -0,0 +1,95 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+/**
+ * Retry policy for idempotent requests.
+ * A request is retried on network errors, server errors (5xx) and [jp.pay.android.exception.PayjpRateLimitException].
+ * The n-th retry waits `initialBackoffMillis * multiplier^(n - 1)` (at most [maxBackoffMillis]),
+ * reduced randomly by up to [jitter] to spread retries of many clients.
+ * If the response has `Retry-After` header, it is used instead.
+ * If `Retry-After` is longer than [maxBackoffMillis], the request is not retried and the error is returned.
+ *
+ * @param maxRetries max number of retries. `0` disables retry.
+ * @param initialBackoffMillis wait time before the first retry.
+ * @param maxBackoffMillis upper limit of wait time.
+ * @param multiplier multiplier of wait time for each retry.
+ * @param jitter ratio of random reduction of wait time, between `0.0` and `1.0`.
+ * @param deadlineMillis time limit of the whole request including retries. `0` means no limit.
+ */
+class PayjpRetryPolicy @JvmOverloads constructor(
+    val maxRetries: Int,
+    val initialBackoffMillis: Long = DEFAULT_INITIAL_BACKOFF_MILLIS,
+    val maxBackoffMillis: Long = DEFAULT_MAX_BACKOFF_MILLIS,
+    val multiplier: Double = DEFAULT_MULTIPLIER,
+    val jitter: Double = DEFAULT_JITTER,
+    val deadlineMillis: Long = 0
+) {
+
+    init {
+        require(maxRetries >= 0) { "maxRetries must not be negative." }
+        require(initialBackoffMillis >= 0) { "initialBackoffMillis must not be negative." }
+        require(maxBackoffMillis >= initialBackoffMillis) {
+            "maxBackoffMillis must not be less than initialBackoffMillis."
+        }
+        require(multiplier >= 1.0) { "multiplier must be 1.0 or more." }
+        require(jitter in 0.0..1.0) { "jitter must be between 0.0 and 1.0." }
+        require(deadlineMillis >= 0) { "deadlineMillis must not be negative." }
+    }
+
+    internal val isEnabled: Boolean
+        get() = maxRetries > 0 || deadlineMillis > 0
+
+    /**
+     * Endpoints which can be retried.
+     */
+    enum class Endpoint {
+        /**
+         * GET /tokens/:id
+         */
+        GET_TOKEN,
+
+        /**
+         * GET /accounts/brands
+         */
+        GET_ACCEPTED_BRANDS,
+
+        /**
+         * POST /tokens/:id/tds_finish
+         */
+        FINISH_THREE_D_SECURE
+    }
+
+    companion object {
+        const val DEFAULT_INITIAL_BACKOFF_MILLIS = 500L
+        const val DEFAULT_MAX_BACKOFF_MILLIS = 8_000L
+        const val DEFAULT_MULTIPLIER = 2.0
+        const val DEFAULT_JITTER = 0.5
+
+        /**
+         * No retry.
+         */
+        @JvmField
+        val NONE = PayjpRetryPolicy(maxRetries = 0)
+    }
+}
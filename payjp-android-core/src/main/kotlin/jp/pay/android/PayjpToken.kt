@@ -27,39 +27,78 @@ import jp.pay.android.model.CardBrandsAcceptedResponse
 import jp.pay.android.model.TenantId
 import jp.pay.android.model.Token
 import jp.pay.android.model.TokenId
+import jp.pay.android.network.AdaptiveRateLimiter
 import jp.pay.android.network.ClientInfoInterceptor
 import jp.pay.android.network.ClientInfoInterceptorProvider
+import jp.pay.android.network.ConnectionPrewarmer
+import jp.pay.android.network.OkHttpClientResources
 import jp.pay.android.network.CustomHeaderInterceptor
+import jp.pay.android.network.RateLimitedTask
+import jp.pay.android.network.ResultCall
+import jp.pay.android.network.RetryingTask
 import jp.pay.android.network.TokenApiClientFactory
 import jp.pay.android.network.TokenApiClientFactory.createApiClient
 import jp.pay.android.network.TokenApiClientFactory.createOkHttp
+import jp.pay.android.util.Tasks
+import okhttp3.OkHttpClient
 import java.nio.charset.Charset
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
 
 /**
  * Payjp token client
  *
  * @param configuration configuration
  * @param payjpApi api
+ * @param connectionPrewarmer prewarmer which shares the connection pool with [payjpApi].
+ * @param httpClientResources resources of the client released on [shutdown].
  * @constructor create new Payjp instance.
  */
 class PayjpToken internal constructor(
     private val configuration: PayjpTokenConfiguration,
     private val interceptor: CustomHeaderInterceptor,
     private val payjpApi: PayjpApi,
-    private val tokenOperationObserver: PayjpTokenOperationObserverInternal = PayjpTokenOperationObserver
+    private val tokenOperationObserver: PayjpTokenOperationObserverInternal = PayjpTokenOperationObserver,
+    private val connectionPrewarmer: ConnectionPrewarmer? = null,
+    private val httpClientResources: OkHttpClientResources? = null
 ) : PayjpTokenService, ClientInfoInterceptorProvider {
 
     internal constructor(configuration: PayjpTokenConfiguration, interceptor: CustomHeaderInterceptor) : this(
+        configuration = configuration,
+        interceptor = interceptor,
+        okHttpClient = createOkHttp(
+            baseUrl = PayjpConstants.API_ENDPOINT,
+            debuggable = configuration.debugEnabled,
+            interceptor = interceptor,
+            baseClient = configuration.okHttpClient,
+            executorService = configuration.networkExecutor,
+            connectTimeoutMillis = configuration.connectTimeoutMillis,
+            readTimeoutMillis = configuration.readTimeoutMillis
+        )
+    )
+
+    private constructor(
+        configuration: PayjpTokenConfiguration,
+        interceptor: CustomHeaderInterceptor,
+        okHttpClient: OkHttpClient
+    ) : this(
         configuration = configuration,
         interceptor = interceptor,
         payjpApi = createApiClient(
             baseUrl = PayjpConstants.API_ENDPOINT,
-            okHttpClient = createOkHttp(
-                baseUrl = PayjpConstants.API_ENDPOINT,
-                debuggable = configuration.debugEnabled,
-                interceptor = interceptor,
-            ),
-            callbackExecutor = configuration.callbackExecutor
+            okHttpClient = okHttpClient,
+            callbackExecutor = configuration.callbackExecutor,
+            debuggable = configuration.debugEnabled
+        ),
+        connectionPrewarmer = ConnectionPrewarmer(
+            okHttpClient = okHttpClient,
+            baseUrl = PayjpConstants.API_ENDPOINT,
+            logger = PayjpLogger.get(configuration.debugEnabled)
+        ),
+        httpClientResources = OkHttpClientResources(
+            okHttpClient = okHttpClient,
+            ownsExecutorService = configuration.okHttpClient == null && configuration.networkExecutor == null,
+            ownsConnectionPool = configuration.okHttpClient == null
         )
     )
 
@@ -82,9 +121,53 @@ class PayjpToken internal constructor(
         authorization = createAuthorization(configuration.publicKey)
     }
 
+    private val cacheExecutor = configuration.acceptedBrandsCacheDirectory?.let { newCacheExecutor() }
+
+    private val schedulerDelegate = lazy { newScheduler() }
+    private val scheduler: ScheduledExecutorService by schedulerDelegate
+
+    private val rateLimiter = AdaptiveRateLimiter(
+        burst = configuration.rateLimitBurst.toDouble(),
+        maxPermitsPerSecond = configuration.rateLimitPermitsPerSecond,
+        minPermitsPerSecond = minOf(
+            AdaptiveRateLimiter.DEFAULT_MIN_PERMITS_PER_SECOND,
+            configuration.rateLimitPermitsPerSecond
+        )
+    )
+
+    @Volatile
+    private var isShutdown = false
+
+    private val acceptedBrandsCache = AcceptedBrandsCache(
+        ttlMillis = configuration.acceptedBrandsCacheTtlMillis,
+        staleWhileRevalidateMillis = configuration.acceptedBrandsStaleWhileRevalidateMillis,
+        callbackExecutor = configuration.callbackExecutor,
+        logger = PayjpLogger.get(configuration.debugEnabled),
+        store = configuration.acceptedBrandsCacheDirectory?.let { directory ->
+            AcceptedBrandsStore(
+                directory = directory,
+                publicKey = configuration.publicKey,
+                maxAgeMillis = configuration.acceptedBrandsDiskCacheMaxAgeMillis,
+                logger = PayjpLogger.get(configuration.debugEnabled)
+            )
+        },
+        ioExecutor = cacheExecutor
+    ) { tenantId ->
+        withRetry(PayjpRetryPolicy.Endpoint.GET_ACCEPTED_BRANDS) {
+            payjpApi.getAcceptedBrands(authorization, tenantId?.id)
+        }
+    }
+
+    private val tokenCache = TokenCache(
+        maxSize = configuration.tokenCacheMaxSize,
+        ttlMillis = configuration.tokenCacheTtlMillis,
+        callbackExecutor = configuration.callbackExecutor
+    )
+
     override fun getPublicKey(): String = configuration.publicKey
 
     override fun createToken(param: PayjpTokenParam): Task<Token> {
+        shutdownFailure<Token>()?.let { return it }
         checkTokenOperationStatus()
         return payjpApi.createToken(
             authorization = authorization,
@@ -97,37 +180,84 @@ class PayjpToken internal constructor(
             email = param.email,
             phone = param.phone,
             threeDSecure = param.threeDSecure
-        ).let { this.wrapWithObserver(it) }
+        ).let { this.withRateLimit(it) }.let { tokenCache.populate(it) }.let { this.wrapWithObserver(it) }
     }
 
     override fun finishTokenThreeDSecure(tokenId: TokenId): Task<Token> {
+        shutdownFailure<Token>()?.let { return it }
         checkTokenOperationStatus()
-        return payjpApi.finishTokenThreeDSecure(
-            authorization = authorization,
-            id = tokenId.id
-        ).let { this.wrapWithObserver(it) }
+        tokenCache.invalidate(tokenId.id)
+        return withRetry(PayjpRetryPolicy.Endpoint.FINISH_THREE_D_SECURE) {
+            payjpApi.finishTokenThreeDSecure(
+                authorization = authorization,
+                id = tokenId.id
+            )
+        }.let { this.withRateLimit(it) }.let { tokenCache.populate(it) }.let { this.wrapWithObserver(it) }
     }
 
     /**
      * Obtain token from token id.
+     * If the token cache is enabled by [PayjpTokenConfiguration.tokenCacheMaxSize],
+     * the token created or retrieved recently may be served from the cache.
      *
      */
     override fun getToken(id: String): Task<Token> {
-        return payjpApi.getToken(authorization, id)
+        shutdownFailure<Token>()?.let { return it }
+        return tokenCache.get(id) { tokenId ->
+            withRetry(PayjpRetryPolicy.Endpoint.GET_TOKEN) { payjpApi.getToken(authorization, tokenId) }
+        }
     }
 
+    override fun getTokens(ids: Collection<String>, parallelism: Int): Task<PayjpTokenBatchResult> =
+        TokenBatchTask(ids, parallelism, configuration.callbackExecutor, ::getToken)
+
     /**
      * Get accepted brands with tenant id (for platform)
+     * The response is cached for each tenant according to [PayjpTokenConfiguration].
      *
      * @param tenantId tenant id (only for platformer)
      * @return task of accepted brands
      */
     override fun getAcceptedBrands(tenantId: TenantId?): Task<CardBrandsAcceptedResponse> {
-        return payjpApi.getAcceptedBrands(authorization, tenantId?.id)
+        shutdownFailure<CardBrandsAcceptedResponse>()?.let { return it }
+        return acceptedBrandsCache.get(tenantId)
     }
 
     override fun getTokenOperationObserver(): PayjpTokenOperationObserverService = tokenOperationObserver
 
+    override fun prewarm(fetchAcceptedBrands: Boolean, tenantId: TenantId?) {
+        if (isShutdown) {
+            return
+        }
+        if (fetchAcceptedBrands) {
+            // The request itself establishes the connection.
+            getAcceptedBrands(tenantId).enqueue(
+                object : Task.Callback<CardBrandsAcceptedResponse> {
+                    override fun onSuccess(data: CardBrandsAcceptedResponse) {}
+
+                    override fun onError(throwable: Throwable) {
+                        PayjpLogger.get(configuration.debugEnabled).w("prewarm failed.", throwable)
+                    }
+                }
+            )
+        } else {
+            connectionPrewarmer?.prewarm()
+        }
+    }
+
+    override fun getAcceptedBrandsCacheStats(): AcceptedBrandsCacheStats = acceptedBrandsCache.stats()
+
+    override fun getTokenCacheStats(): TokenCacheStats = tokenCache.stats()
+
+    override fun shutdown() {
+        isShutdown = true
+        httpClientResources?.release()
+        cacheExecutor?.shutdown()
+        if (schedulerDelegate.isInitialized()) {
+            scheduler.shutdownNow()
+        }
+    }
+
     override fun getClientInfoInterceptor(): ClientInfoInterceptor = interceptor
 
     private fun createAuthorization(publicKey: String) =
@@ -135,6 +265,58 @@ class PayjpToken internal constructor(
             .let { data -> Base64.encodeToString(data, Base64.NO_WRAP) }
             .let { credential -> "Basic $credential" }
 
+    private fun newCacheExecutor() = Executors.newSingleThreadExecutor { r ->
+        Thread(r, "payjp-cache").apply {
+            priority = Thread.MIN_PRIORITY
+        }
+    }
+
+    private fun newScheduler() = Executors.newSingleThreadScheduledExecutor { r ->
+        Thread(r, "payjp-scheduler").apply {
+            isDaemon = true
+        }
+    }
+
+    private fun <T> withRetry(endpoint: PayjpRetryPolicy.Endpoint, newCall: () -> ResultCall<T>): Task<T> {
+        val policy = configuration.retryPolicy(endpoint)
+        if (!policy.isEnabled) {
+            return newCall()
+        }
+        return RetryingTask(
+            policy = policy,
+            scheduler = scheduler,
+            callbackExecutor = configuration.callbackExecutor,
+            logger = PayjpLogger.get(configuration.debugEnabled),
+            newCall = newCall
+        )
+    }
+
+    private fun <T> withRateLimit(task: Task<T>): Task<T> {
+        if (!configuration.rateLimitEnabled) {
+            return task
+        }
+        return RateLimitedTask(
+            limiter = rateLimiter,
+            scheduler = scheduler,
+            callbackExecutor = configuration.callbackExecutor,
+            maxWaitMillis = configuration.rateLimitMaxWaitMillis,
+            task = task
+        )
+    }
+
+    /**
+     * @return failure task if [shutdown] has been called, e.g. the app holds this instance across `Payjp.init`.
+     */
+    private fun <T> shutdownFailure(): Task<T>? = if (isShutdown) {
+        Tasks.failure(
+            IllegalStateException(
+                "This PayjpTokenService has been shut down. Use the instance of the latest Payjp.init instead."
+            )
+        )
+    } else {
+        null
+    }
+
     private fun checkTokenOperationStatus() {
         tokenOperationObserver.status.takeIf { it != PayjpTokenOperationStatus.ACCEPTABLE }?.let {
             PayjpLogger.get(configuration.debugEnabled)
@@ -150,7 +332,7 @@ class PayjpToken internal constructor(
             tokenOperationObserver.startRequest()
             task.run()
         } finally {
-            tokenOperationObserver.completeRequest()
+            tokenOperationObserver.completeRequest(rateLimiter.throttleMillis())
         }
 
         override fun enqueue(callback: Task.Callback<T>) {
@@ -158,12 +340,12 @@ class PayjpToken internal constructor(
             task.enqueue(
                 object : Task.Callback<T> {
                     override fun onSuccess(data: T) {
-                        tokenOperationObserver.completeRequest()
+                        tokenOperationObserver.completeRequest(rateLimiter.throttleMillis())
                         callback.onSuccess(data)
                     }
 
                     override fun onError(throwable: Throwable) {
-                        tokenOperationObserver.completeRequest()
+                        tokenOperationObserver.completeRequest(rateLimiter.throttleMillis())
                         callback.onError(throwable)
                     }
                 }
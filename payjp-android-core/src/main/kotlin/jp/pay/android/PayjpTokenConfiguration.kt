@@ -24,8 +24,11 @@ package jp.pay.android
 
 import jp.pay.android.model.ClientInfo
 import jp.pay.android.validator.PublicKeyValidator
+import okhttp3.OkHttpClient
+import java.io.File
 import java.util.Locale
 import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
 
 /**
  * Configuration for Payjp
@@ -35,16 +38,102 @@ import java.util.concurrent.Executor
  * @param publicKey public key `pk_xxxxxxxxxxxxxxxxx`
  * @param debugEnabled is debug enabled or not
  * @param locale locale of request header
+ * @param acceptedBrandsCacheTtlMillis time to cache accepted brands. `0` disables the cache.
+ * @param acceptedBrandsStaleWhileRevalidateMillis time to use the expired accepted brands while revalidating.
+ * @param acceptedBrandsCacheDirectory directory to save accepted brands. `null` disables the file cache.
+ * It is not used if [acceptedBrandsCacheTtlMillis] is `0`.
+ * @param okHttpClient client of the app to share the connection pool and the dispatcher.
+ * @param networkExecutor executor to run requests.
+ * @param retryPolicies retry policy for each idempotent endpoint. Endpoints not in the map are not retried.
+ * @param connectTimeoutMillis connect timeout of each request. `null` uses the default of the client.
+ * @param readTimeoutMillis read and write timeout of each request. `null` uses the default of the client.
+ * @param tokenCacheMaxSize max number of tokens to cache. `0` (the default) disables the cache.
+ * @param tokenCacheTtlMillis time to cache tokens. `0` disables the cache.
+ * @param rateLimitEnabled if true, token requests are limited after the server returns a rate limit error.
+ * @param rateLimitPermitsPerSecond max rate of token requests while limited.
+ * @param rateLimitBurst max number of token requests sent at once while limited.
+ * @param rateLimitMaxWaitMillis token requests which would wait longer than this while limited fail immediately.
+ * @param acceptedBrandsDiskCacheMaxAgeMillis accepted brands saved longer ago than this are not loaded from the file.
  */
-class PayjpTokenConfiguration constructor(
+class PayjpTokenConfiguration @JvmOverloads constructor(
     val publicKey: String,
     val debugEnabled: Boolean,
     val locale: Locale,
     val callbackExecutor: Executor,
-    val clientInfo: ClientInfo
+    val clientInfo: ClientInfo,
+    val acceptedBrandsCacheTtlMillis: Long = DEFAULT_ACCEPTED_BRANDS_CACHE_TTL_MILLIS,
+    val acceptedBrandsStaleWhileRevalidateMillis: Long = DEFAULT_ACCEPTED_BRANDS_STALE_WHILE_REVALIDATE_MILLIS,
+    val acceptedBrandsCacheDirectory: File? = null,
+    val okHttpClient: OkHttpClient? = null,
+    val networkExecutor: ExecutorService? = null,
+    val retryPolicies: Map<PayjpRetryPolicy.Endpoint, PayjpRetryPolicy> = emptyMap(),
+    val connectTimeoutMillis: Long? = null,
+    val readTimeoutMillis: Long? = null,
+    val tokenCacheMaxSize: Int = DEFAULT_TOKEN_CACHE_MAX_SIZE,
+    val tokenCacheTtlMillis: Long = DEFAULT_TOKEN_CACHE_TTL_MILLIS,
+    val rateLimitEnabled: Boolean = true,
+    val rateLimitPermitsPerSecond: Double = DEFAULT_RATE_LIMIT_PERMITS_PER_SECOND,
+    val rateLimitBurst: Int = DEFAULT_RATE_LIMIT_BURST,
+    val rateLimitMaxWaitMillis: Long = DEFAULT_RATE_LIMIT_MAX_WAIT_MILLIS,
+    val acceptedBrandsDiskCacheMaxAgeMillis: Long = DEFAULT_ACCEPTED_BRANDS_DISK_CACHE_MAX_AGE_MILLIS
 ) {
 
     init {
         PublicKeyValidator.validate(publicKey)
+        require(acceptedBrandsCacheTtlMillis >= 0) { "acceptedBrandsCacheTtlMillis must not be negative." }
+        require(acceptedBrandsStaleWhileRevalidateMillis >= 0) {
+            "acceptedBrandsStaleWhileRevalidateMillis must not be negative."
+        }
+        require(connectTimeoutMillis == null || connectTimeoutMillis >= 0) {
+            "connectTimeoutMillis must not be negative."
+        }
+        require(readTimeoutMillis == null || readTimeoutMillis >= 0) { "readTimeoutMillis must not be negative." }
+        require(tokenCacheMaxSize >= 0) { "tokenCacheMaxSize must not be negative." }
+        require(tokenCacheTtlMillis >= 0) { "tokenCacheTtlMillis must not be negative." }
+        require(rateLimitPermitsPerSecond > 0) { "rateLimitPermitsPerSecond must be positive." }
+        require(rateLimitBurst >= 1) { "rateLimitBurst must be at least 1." }
+        require(rateLimitMaxWaitMillis >= 0) { "rateLimitMaxWaitMillis must not be negative." }
+        require(acceptedBrandsDiskCacheMaxAgeMillis >= 0) {
+            "acceptedBrandsDiskCacheMaxAgeMillis must not be negative."
+        }
+    }
+
+    internal fun retryPolicy(endpoint: PayjpRetryPolicy.Endpoint): PayjpRetryPolicy =
+        retryPolicies[endpoint] ?: PayjpRetryPolicy.NONE
+
+    companion object {
+        /**
+         * 5 minutes
+         */
+        const val DEFAULT_ACCEPTED_BRANDS_CACHE_TTL_MILLIS = 5 * 60 * 1000L
+
+        /**
+         * 1 hour
+         */
+        const val DEFAULT_ACCEPTED_BRANDS_STALE_WHILE_REVALIDATE_MILLIS = 60 * 60 * 1000L
+
+        /**
+         * 7 days
+         */
+        const val DEFAULT_ACCEPTED_BRANDS_DISK_CACHE_MAX_AGE_MILLIS = 7 * 24 * 60 * 60 * 1000L
+
+        /**
+         * The token cache is disabled by default, because cached tokens may be stale.
+         */
+        const val DEFAULT_TOKEN_CACHE_MAX_SIZE = 0
+
+        /**
+         * 30 seconds
+         */
+        const val DEFAULT_TOKEN_CACHE_TTL_MILLIS = 30 * 1000L
+
+        const val DEFAULT_RATE_LIMIT_PERMITS_PER_SECOND = 2.0
+
+        const val DEFAULT_RATE_LIMIT_BURST = 3
+
+        /**
+         * 5 seconds
+         */
+        const val DEFAULT_RATE_LIMIT_MAX_WAIT_MILLIS = 5 * 1000L
     }
 }
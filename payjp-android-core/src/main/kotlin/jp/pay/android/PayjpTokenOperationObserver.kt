@@ -22,49 +22,5 @@
  */
 package jp.pay.android
 
-import android.os.Handler
-import android.os.Looper
-import jp.pay.android.PayjpTokenOperationObserverService.TokenRequestStatusListener
-
-internal object PayjpTokenOperationObserver : PayjpTokenOperationObserverInternal {
-
-    private const val MS_THROTTLE_DURATION = 2000L
-    private val handler = Handler(Looper.getMainLooper())
-    private val makeAcceptable = Runnable { status = PayjpTokenOperationStatus.ACCEPTABLE }
-    private val makeRunning = Runnable { status = PayjpTokenOperationStatus.RUNNING }
-    private val makeThrottled = Runnable { status = PayjpTokenOperationStatus.THROTTLED }
-    @Volatile override var status: PayjpTokenOperationStatus = PayjpTokenOperationStatus.ACCEPTABLE
-        private set(value) {
-            val onChange = field != value
-            field = value
-            if (onChange) {
-                handler.post {
-                    listeners.forEach { it.onChangedStatus(value) }
-                }
-            }
-        }
-    private val listeners = mutableListOf<TokenRequestStatusListener>()
-
-    override fun startRequest() {
-        handler.removeCallbacks(makeAcceptable)
-        handler.removeCallbacks(makeThrottled)
-        handler.post(makeRunning)
-    }
-
-    override fun completeRequest() {
-        handler.post(makeThrottled)
-        handler.postDelayed(makeAcceptable, MS_THROTTLE_DURATION)
-    }
-
-    override fun addListener(listener: TokenRequestStatusListener) {
-        listeners.add(listener)
-    }
-
-    override fun removeListener(listener: TokenRequestStatusListener) {
-        listeners.remove(listener)
-    }
-
-    override fun removeAllListeners() {
-        listeners.clear()
-    }
-}
+internal object PayjpTokenOperationObserver :
+    PayjpTokenOperationObserverInternal by PayjpTokenOperationStateMachine()
@@ -26,5 +26,8 @@ internal interface PayjpTokenOperationObserverInternal : PayjpTokenOperationObse
 
     fun startRequest()
 
-    fun completeRequest()
+    /**
+     * @param throttleMillis time to keep [PayjpTokenOperationStatus.THROTTLED] at least.
+     */
+    fun completeRequest(throttleMillis: Long = 0)
 }
@@ -0,0 +1,132 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import jp.pay.android.PayjpTokenOperationObserverService.TokenRequestStatusListener
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Lock-free implementation of [PayjpTokenOperationObserverInternal].
+ * It counts running requests, so the status is [PayjpTokenOperationStatus.RUNNING] until all of them complete.
+ * [status] is computed from [clock], so it is correct even before [scheduler] runs.
+ * Listeners are notified on [scheduler] (the main thread by default) only when the status changes.
+ *
+ * @param clock current time in millis.
+ * @param scheduler scheduler to notify listeners. It must run actions serially.
+ * @param minThrottleMillis min duration of [PayjpTokenOperationStatus.THROTTLED].
+ */
+internal class PayjpTokenOperationStateMachine(
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+    private val scheduler: Scheduler = MainThreadScheduler,
+    private val minThrottleMillis: Long = MS_THROTTLE_DURATION
+) : PayjpTokenOperationObserverInternal {
+
+    /**
+     * Scheduler to notify listeners.
+     */
+    interface Scheduler {
+
+        fun execute(action: Runnable)
+
+        fun schedule(action: Runnable, delayMillis: Long)
+    }
+
+    private class State(val runningCount: Int, val throttledUntil: Long) {
+
+        fun statusAt(now: Long): PayjpTokenOperationStatus = when {
+            runningCount > 0 -> PayjpTokenOperationStatus.RUNNING
+            now < throttledUntil -> PayjpTokenOperationStatus.THROTTLED
+            else -> PayjpTokenOperationStatus.ACCEPTABLE
+        }
+    }
+
+    private val state = AtomicReference(State(runningCount = 0, throttledUntil = 0L))
+    private val listeners = CopyOnWriteArrayList<TokenRequestStatusListener>()
+
+    @Volatile
+    private var notifiedStatus = PayjpTokenOperationStatus.ACCEPTABLE
+
+    private val notifyIfChanged = Runnable {
+        val current = status
+        if (current != notifiedStatus) {
+            notifiedStatus = current
+            listeners.forEach { it.onChangedStatus(current) }
+        }
+    }
+
+    override val status: PayjpTokenOperationStatus
+        get() = state.get().statusAt(clock())
+
+    override fun startRequest() {
+        update { State(it.runningCount + 1, it.throttledUntil) }
+    }
+
+    override fun completeRequest(throttleMillis: Long) {
+        val duration = maxOf(minThrottleMillis, throttleMillis)
+        val until = clock() + duration
+        update { State((it.runningCount - 1).coerceAtLeast(0), maxOf(it.throttledUntil, until)) }
+        scheduler.schedule(notifyIfChanged, duration)
+    }
+
+    override fun addListener(listener: TokenRequestStatusListener) {
+        listeners.add(listener)
+    }
+
+    override fun removeListener(listener: TokenRequestStatusListener) {
+        listeners.remove(listener)
+    }
+
+    override fun removeAllListeners() {
+        listeners.clear()
+    }
+
+    private inline fun update(transform: (State) -> State) {
+        while (true) {
+            val current = state.get()
+            if (state.compareAndSet(current, transform(current))) {
+                break
+            }
+        }
+        scheduler.execute(notifyIfChanged)
+    }
+
+    internal object MainThreadScheduler : Scheduler {
+        private val handler by lazy { Handler(Looper.getMainLooper()) }
+
+        override fun execute(action: Runnable) {
+            handler.post(action)
+        }
+
+        override fun schedule(action: Runnable, delayMillis: Long) {
+            handler.postDelayed(action, delayMillis)
+        }
+    }
+
+    companion object {
+        const val MS_THROTTLE_DURATION = 2000L
+    }
+}
@@ -26,6 +26,7 @@ import jp.pay.android.model.CardBrandsAcceptedResponse
 import jp.pay.android.model.TenantId
 import jp.pay.android.model.Token
 import jp.pay.android.model.TokenId
+import java.util.concurrent.Executor
 
 /**
  * interface for retrieve and create token.
@@ -81,12 +82,28 @@ interface PayjpTokenService {
 
     /**
      * Retrieve token from token id.
+     * If the token cache is enabled, it may return the cached token without request,
+     * whose fields (e.g. [Token.used]) can be as old as [PayjpTokenConfiguration.tokenCacheTtlMillis].
      *
      * @param id token id
      * @return task to retrieve token.
      */
     fun getToken(id: String): Task<Token>
 
+    /**
+     * Retrieve tokens of ids.
+     * At most [parallelism] requests run at the same time, and duplicate ids are requested once.
+     * The error of each id is in [PayjpTokenBatchResult.errors]; the task fails only when it is canceled.
+     *
+     * @param ids token ids
+     * @param parallelism max number of requests running at the same time.
+     * @return task to retrieve tokens.
+     */
+    fun getTokens(
+        ids: Collection<String>,
+        parallelism: Int = DEFAULT_GET_TOKENS_PARALLELISM
+    ): Task<PayjpTokenBatchResult> = TokenBatchTask(ids, parallelism, Executor { it.run() }, ::getToken)
+
     /**
      * Get accepted brands.
      *
@@ -97,16 +114,57 @@ interface PayjpTokenService {
     /**
      * Get accepted brands with tenantId.
      * Only for platform.
+     * Concurrent requests for the same tenant are merged into one,
+     * and the response may be served from the cache.
      *
      * @param tenantId tenant id.
      * @return task to get accepted brands.
      */
     fun getAcceptedBrands(tenantId: TenantId?): Task<CardBrandsAcceptedResponse>
 
+    /**
+     * Establish a connection to PAY.JP in background before it is needed
+     * (e.g. when the checkout screen is opened),
+     * so that the following requests such as [createToken] skip DNS lookup and TLS handshake.
+     *
+     * @param fetchAcceptedBrands if true, also fetch accepted brands (and cache them).
+     * @param tenantId tenant id for accepted brands (only for platform).
+     */
+    fun prewarm(fetchAcceptedBrands: Boolean = false, tenantId: TenantId? = null) {}
+
+    /**
+     * Release the threads and the connections owned by this instance.
+     * The client and the executor given by the app are not released.
+     * The running requests are still completed, but you must not make a new request after that.
+     * A new request fails with [IllegalStateException], and so may a request which is waiting for retry.
+     */
+    fun shutdown() {}
+
+    /**
+     * Get statistics of the accepted brands cache.
+     *
+     * @return stats
+     */
+    fun getAcceptedBrandsCacheStats(): AcceptedBrandsCacheStats = AcceptedBrandsCacheStats.EMPTY
+
+    /**
+     * Get statistics of the token cache.
+     *
+     * @return stats
+     */
+    fun getTokenCacheStats(): TokenCacheStats = TokenCacheStats.EMPTY
+
     /**
      * You can observe [PayjpTokenOperationStatus] changes to know if you should make a request.
      *
      * @return observer
      */
     fun getTokenOperationObserver(): PayjpTokenOperationObserverService
+
+    companion object {
+        /**
+         * Same as the max requests per host of OkHttp.
+         */
+        const val DEFAULT_GET_TOKENS_PARALLELISM = 5
+    }
 }
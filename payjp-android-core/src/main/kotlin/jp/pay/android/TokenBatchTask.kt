@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import jp.pay.android.model.Token
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Task which retrieves tokens of each id with bounded concurrency.
+ * Duplicate ids are requested once.
+ * The error of each id is collected in the result; the task itself fails only when it is canceled.
+ *
+ * Requests are started from a drain loop instead of the completion callback,
+ * so that tasks which complete synchronously (e.g. cache hits) do not recurse for each id.
+ *
+ * @param ids token ids
+ * @param parallelism max number of requests running at the same time.
+ * @param callbackExecutor executor to notify results which are not notified by the token tasks.
+ * @param getToken create task to retrieve the token.
+ */
+internal class TokenBatchTask(
+    ids: Collection<String>,
+    private val parallelism: Int,
+    private val callbackExecutor: Executor,
+    private val getToken: (id: String) -> Task<Token>
+) : Task<PayjpTokenBatchResult> {
+
+    init {
+        require(parallelism > 0) { "parallelism must be positive." }
+    }
+
+    private val pending = ConcurrentLinkedQueue(LinkedHashSet(ids))
+    private val remaining = AtomicInteger(pending.size)
+    private val freeSlots = AtomicInteger(parallelism)
+    private val drainRequests = AtomicInteger()
+    private val tokens = ConcurrentHashMap<String, Token>()
+    private val errors = ConcurrentHashMap<String, Throwable>()
+    private val running = ConcurrentHashMap<String, Task<Token>>()
+    private val executed = AtomicBoolean()
+    private val finished = AtomicBoolean()
+
+    @Volatile
+    private var canceled = false
+
+    @Volatile
+    private var pendingCallback: Task.Callback<PayjpTokenBatchResult>? = null
+
+    override fun run(): PayjpTokenBatchResult {
+        val latch = CountDownLatch(1)
+        val result = AtomicReference<PayjpTokenBatchResult>()
+        val error = AtomicReference<Throwable>()
+        enqueue(
+            object : Task.Callback<PayjpTokenBatchResult> {
+                override fun onSuccess(data: PayjpTokenBatchResult) {
+                    result.set(data)
+                    latch.countDown()
+                }
+
+                override fun onError(throwable: Throwable) {
+                    error.set(throwable)
+                    latch.countDown()
+                }
+            }
+        )
+        latch.await()
+        error.get()?.let { throw it }
+        return result.get()
+    }
+
+    override fun enqueue(callback: Task.Callback<PayjpTokenBatchResult>) {
+        check(executed.compareAndSet(false, true)) { "Already executed." }
+        pendingCallback = callback
+        when {
+            canceled -> finish { callback.onError(IOException("Canceled")) }
+            remaining.get() == 0 -> finish { callback.onSuccess(PayjpTokenBatchResult(emptyMap(), emptyMap())) }
+            else -> drain(callback)
+        }
+    }
+
+    override fun isExecuted(): Boolean = executed.get()
+
+    override fun cancel() {
+        canceled = true
+        running.values.forEach { it.cancel() }
+        pendingCallback?.let { callback ->
+            finish { callback.onError(IOException("Canceled")) }
+        }
+    }
+
+    override fun isCanceled(): Boolean = canceled
+
+    /**
+     * Start requests while there are free slots.
+     * Only one thread runs the loop at a time; the others just ask it to run once more.
+     */
+    private fun drain(callback: Task.Callback<PayjpTokenBatchResult>) {
+        if (drainRequests.getAndIncrement() != 0) {
+            return
+        }
+        var requests = 1
+        while (true) {
+            while (!canceled && freeSlots.get() > 0) {
+                val id = pending.poll() ?: break
+                freeSlots.decrementAndGet()
+                start(id, callback)
+            }
+            requests = drainRequests.addAndGet(-requests)
+            if (requests == 0) {
+                return
+            }
+        }
+    }
+
+    private fun start(id: String, callback: Task.Callback<PayjpTokenBatchResult>) {
+        val task = getToken(id)
+        running[id] = task
+        // cancel() may have missed the new task.
+        if (canceled) {
+            task.cancel()
+        }
+        task.enqueue(
+            object : Task.Callback<Token> {
+                override fun onSuccess(data: Token) {
+                    tokens[id] = data
+                    onComplete(id, callback)
+                }
+
+                override fun onError(throwable: Throwable) {
+                    errors[id] = throwable
+                    onComplete(id, callback)
+                }
+            }
+        )
+    }
+
+    private fun onComplete(id: String, callback: Task.Callback<PayjpTokenBatchResult>) {
+        running.remove(id)
+        freeSlots.incrementAndGet()
+        if (remaining.decrementAndGet() == 0) {
+            finish { callback.onSuccess(PayjpTokenBatchResult(HashMap(tokens), HashMap(errors))) }
+            return
+        }
+        drain(callback)
+    }
+
+    private fun finish(notify: () -> Unit) {
+        if (finished.compareAndSet(false, true)) {
+            callbackExecutor.execute(notify)
+        }
+    }
+}
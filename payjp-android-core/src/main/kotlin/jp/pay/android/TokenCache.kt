@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import android.os.SystemClock
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.Token
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-memory LRU cache of tokens populated by the responses of token requests.
+ *
+ * - At most [maxSize] tokens younger than [ttlMillis] are returned without request.
+ * - Tokens waiting for 3-D Secure are not cached because their status changes outside the SDK.
+ *   `used` also changes on the server of the app, so keep [ttlMillis] short.
+ * - The token is invalidated when 3-D Secure is being finished.
+ *
+ * @param maxSize max number of tokens. `0` disables the cache.
+ * @param ttlMillis time to keep the token.
+ * @param callbackExecutor executor to run callback.
+ * @param clock monotonic clock in milliseconds.
+ */
+internal class TokenCache(
+    private val maxSize: Int,
+    private val ttlMillis: Long,
+    private val callbackExecutor: Executor,
+    private val clock: () -> Long = SystemClock::elapsedRealtime
+) {
+
+    private class Entry(val token: Token, val cachedAt: Long)
+
+    private val entries = object : LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?): Boolean = size > maxSize
+    }
+    private val hitCount = AtomicLong()
+    private val missCount = AtomicLong()
+
+    private val isEnabled: Boolean
+        get() = maxSize > 0 && ttlMillis > 0
+
+    /**
+     * Get token task backed by the cache.
+     *
+     * @param id token id
+     * @param loader fetch token from api.
+     * @return task of token
+     */
+    fun get(id: String, loader: (id: String) -> Task<Token>): Task<Token> {
+        if (!isEnabled) {
+            return loader(id)
+        }
+        val cached = synchronized(entries) {
+            val entry = entries[id]
+            if (entry != null && clock() - entry.cachedAt >= ttlMillis) {
+                entries.remove(id)
+                null
+            } else {
+                entry
+            }
+        }
+        if (cached == null) {
+            missCount.incrementAndGet()
+            return populate(loader(id))
+        }
+        hitCount.incrementAndGet()
+        return HitTask(cached.token)
+    }
+
+    /**
+     * Put the token of the task result into the cache.
+     *
+     * @param task task of token
+     * @return task which returns the same result.
+     */
+    fun populate(task: Task<Token>): Task<Token> = if (isEnabled) PopulatingTask(task) else task
+
+    fun put(token: Token) {
+        if (!isEnabled) {
+            return
+        }
+        synchronized(entries) {
+            if (token.card.threeDSecureStatus == ThreeDSecureStatus.UNVERIFIED) {
+                entries.remove(token.id)
+            } else {
+                entries[token.id] = Entry(token, clock())
+            }
+        }
+    }
+
+    fun invalidate(id: String) {
+        synchronized(entries) {
+            entries.remove(id)
+        }
+    }
+
+    fun clear() {
+        synchronized(entries) {
+            entries.clear()
+        }
+    }
+
+    fun stats(): TokenCacheStats = TokenCacheStats(hitCount = hitCount.get(), missCount = missCount.get())
+
+    private inner class PopulatingTask(private val task: Task<Token>) : Task<Token> {
+
+        override fun run(): Token = task.run().also { put(it) }
+
+        override fun enqueue(callback: Task.Callback<Token>) {
+            task.enqueue(
+                object : Task.Callback<Token> {
+                    override fun onSuccess(data: Token) {
+                        put(data)
+                        callback.onSuccess(data)
+                    }
+
+                    override fun onError(throwable: Throwable) = callback.onError(throwable)
+                }
+            )
+        }
+
+        override fun isExecuted(): Boolean = task.isExecuted()
+
+        override fun cancel() = task.cancel()
+
+        override fun isCanceled(): Boolean = task.isCanceled()
+    }
+
+    private inner class HitTask(private val token: Token) : Task<Token> {
+        @Volatile private var executed = false
+        @Volatile private var canceled = false
+
+        override fun run(): Token {
+            executed = true
+            return token
+        }
+
+        override fun enqueue(callback: Task.Callback<Token>) {
+            executed = true
+            callbackExecutor.execute {
+                if (!canceled) callback.onSuccess(token)
+            }
+        }
+
+        override fun isExecuted(): Boolean = executed
+
+        override fun cancel() {
+            canceled = true
+        }
+
+        override fun isCanceled(): Boolean = canceled
+    }
+}
@@ -31,12 +31,26 @@ import jp.pay.android.model.ApiError
  * @param cause cause throwable
  * @param httpStatusCode code e.g. `400`
  * @param apiError error information from api response
- * @param source raw json string
+ * @param source raw json string. It is kept only if debug is enabled.
  */
-open class PayjpApiException(
+open class PayjpApiException internal constructor(
     override val message: String,
     override val cause: Throwable,
     open val httpStatusCode: Int,
     open val apiError: ApiError,
-    open val source: String?
-) : RuntimeException(message, cause)
+    rawSource: Lazy<String?>
+) : RuntimeException(message, cause) {
+
+    constructor(
+        message: String,
+        cause: Throwable,
+        httpStatusCode: Int,
+        apiError: ApiError,
+        source: String?
+    ) : this(message, cause, httpStatusCode, apiError, lazyOf(source))
+
+    /**
+     * raw json string, or null if debug is not enabled. It is decoded on first access.
+     */
+    open val source: String? by rawSource
+}
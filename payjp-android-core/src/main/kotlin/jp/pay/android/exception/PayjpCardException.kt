@@ -29,12 +29,21 @@ import jp.pay.android.model.ApiError
  * problem about card
  *
  */
-class PayjpCardException(
+class PayjpCardException internal constructor(
     override val message: String,
     override val cause: Throwable,
     override val apiError: ApiError,
-    override val source: String
-) : PayjpApiException(message, cause, STATUS_CODE, apiError, source) {
+    rawSource: Lazy<String>
+) : PayjpApiException(message, cause, STATUS_CODE, apiError, rawSource) {
+
+    constructor(
+        message: String,
+        cause: Throwable,
+        apiError: ApiError,
+        source: String
+    ) : this(message, cause, apiError, lazyOf(source))
+
+    override val source: String by rawSource
 
     companion object {
         const val STATUS_CODE = 402
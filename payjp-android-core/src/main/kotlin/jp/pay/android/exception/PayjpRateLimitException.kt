@@ -23,22 +23,47 @@
 package jp.pay.android.exception
 
 import jp.pay.android.model.ApiError
+import retrofit2.HttpException
+import java.util.concurrent.TimeUnit
 
 /**
  * PayjpRateLimitException
  * Too many requests in a very short period.
+ * Wait [retryAfterSeconds] before retry if the server tells it.
  *
  * @param message message
  * @param cause cause throwable
  * @param apiError error information from api response
  * @param source raw json string
  */
-class PayjpRateLimitException(
+class PayjpRateLimitException internal constructor(
     override val message: String,
     override val cause: Throwable,
     override val apiError: ApiError,
-    override val source: String
-) : PayjpApiException(message, cause, STATUS_CODE, apiError, source) {
+    rawSource: Lazy<String>
+) : PayjpApiException(message, cause, STATUS_CODE, apiError, rawSource) {
+
+    constructor(
+        message: String,
+        cause: Throwable,
+        apiError: ApiError,
+        source: String
+    ) : this(message, cause, apiError, lazyOf(source))
+
+    override val source: String by rawSource
+
+    /**
+     * Seconds to wait before retry from `Retry-After` header, or null if absent.
+     */
+    val retryAfterSeconds: Long?
+        get() {
+            val headers = (cause as? HttpException)?.response()?.headers() ?: return null
+            val value = headers.get("Retry-After")?.trim() ?: return null
+            return value.toLongOrNull()?.coerceAtLeast(0)
+                ?: headers.getDate("Retry-After")?.let { date ->
+                    TimeUnit.MILLISECONDS.toSeconds(date.time - System.currentTimeMillis()).coerceAtLeast(0)
+                }
+        }
 
     companion object {
         const val STATUS_CODE = 429
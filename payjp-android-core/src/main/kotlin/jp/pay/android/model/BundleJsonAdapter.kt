@@ -24,20 +24,38 @@ package jp.pay.android.model
 
 import android.os.Bundle
 import com.squareup.moshi.FromJson
+import com.squareup.moshi.JsonReader
 import com.squareup.moshi.ToJson
 
+/**
+ * Json adapter for metadata.
+ * It reads each value from [JsonReader] and puts it into [Bundle] directly,
+ * without decoding the whole object into a map first.
+ * Values are stored in the same way as before: strings and booleans as they are,
+ * `null` is skipped and others as their string representation.
+ */
 internal class BundleJsonAdapter {
 
     @FromJson
-    fun fromJson(data: Map<String, Any?>): Bundle = Bundle().apply {
-        data.entries.forEach { (k, v) ->
-            when (v) {
-                null -> {}
-                is String -> putString(k, v)
-                is Boolean -> putBoolean(k, v)
-                else -> putString(k, v.toString())
+    fun fromJson(reader: JsonReader): Bundle? {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull()
+        }
+        val bundle = Bundle()
+        reader.beginObject()
+        while (reader.hasNext()) {
+            val key = reader.nextName()
+            when (reader.peek()) {
+                JsonReader.Token.NULL -> reader.nextNull<Any>()
+                JsonReader.Token.STRING -> bundle.putString(key, reader.nextString())
+                JsonReader.Token.BOOLEAN -> bundle.putBoolean(key, reader.nextBoolean())
+                // numbers are decoded as double to keep the same representation as a map of json values.
+                JsonReader.Token.NUMBER -> bundle.putString(key, reader.nextDouble().toString())
+                else -> bundle.putString(key, reader.readJsonValue().toString())
             }
         }
+        reader.endObject()
+        return bundle
     }
 
     @ToJson
@@ -25,6 +25,7 @@ package jp.pay.android.model
 import android.os.Parcelable
 import com.squareup.moshi.FromJson
 import com.squareup.moshi.JsonDataException
+import com.squareup.moshi.JsonReader
 import com.squareup.moshi.ToJson
 import kotlinx.parcelize.Parcelize
 
@@ -70,28 +71,56 @@ enum class CardBrand(val rawValue: String) : Parcelable {
         @ToJson
         fun toJson(brand: CardBrand): String = brand.rawValue
 
-        @FromJson
         fun fromJson(brand: String): CardBrand {
-            return values().filter { it != UNKNOWN }.firstOrNull { it.rawValue == brand }
-                ?: throw JsonDataException("unknown brand: $brand")
+            return RawValues.ALL[brand] ?: throw JsonDataException("unknown brand: $brand")
+        }
+
+        /**
+         * Match the brand string in the reader's buffer without allocating it.
+         */
+        @FromJson
+        fun fromJson(reader: JsonReader): CardBrand? {
+            if (reader.peek() == JsonReader.Token.NULL) {
+                return reader.nextNull()
+            }
+            val index = reader.selectString(RawValues.OPTIONS)
+            return if (index >= 0) RawValues.BRANDS[index] else fromJson(reader.nextString())
         }
     }
 
+    /**
+     * Brands which can be decoded from json, looked up by [rawValue].
+     * [UNKNOWN] is not a brand from the API.
+     */
+    private object RawValues {
+        val BRANDS: List<CardBrand> = values().filter { it != UNKNOWN }
+        val ALL: Map<String, CardBrand> = BRANDS.associateBy { it.rawValue }
+        val OPTIONS: JsonReader.Options = JsonReader.Options.of(*BRANDS.map { it.rawValue }.toTypedArray())
+    }
+
     /**
      * card number regular expression.
      * Because we only check the lead several character,
      * the regex has no size restriction.
      */
     val numberRegex: Regex
-        get() = when (this) {
-            VISA -> Regex("""\A4[0-9]*\z""")
-            MASTER_CARD -> Regex("""\A(?:5[1-5]|2[2-7])[0-9]*\z""")
-            JCB -> Regex("""\A(?:352[8-9]|35[3-8])[0-9]*\z""")
-            AMEX -> Regex("""\A3[47][0-9]*\z""")
-            DINERS_CLUB -> Regex("""\A3(?:0[0-5]|[68])[0-9]*\z""")
-            DISCOVER -> Regex("""\A6(?:011|5)[0-9]*\z""")
-            UNKNOWN -> Regex("""""")
-        }
+        get() = NumberRegexes.ALL.getValue(this)
+
+    /**
+     * Compiled [numberRegex] for each brand.
+     * Compiling regex is expensive, so we do it only once.
+     */
+    private object NumberRegexes {
+        val ALL: Map<CardBrand, Regex> = mapOf(
+            VISA to Regex("""\A4[0-9]*\z"""),
+            MASTER_CARD to Regex("""\A(?:5[1-5]|2[2-7])[0-9]*\z"""),
+            JCB to Regex("""\A(?:352[8-9]|35[3-8])[0-9]*\z"""),
+            AMEX to Regex("""\A3[47][0-9]*\z"""),
+            DINERS_CLUB to Regex("""\A3(?:0[0-5]|[68])[0-9]*\z"""),
+            DISCOVER to Regex("""\A6(?:011|5)[0-9]*\z"""),
+            UNKNOWN to Regex("""""")
+        )
+    }
 
     /**
      * valid length of the card number.
@@ -25,6 +25,7 @@ package jp.pay.android.model
 import android.os.Parcelable
 import com.squareup.moshi.FromJson
 import com.squareup.moshi.JsonDataException
+import com.squareup.moshi.JsonReader
 import com.squareup.moshi.ToJson
 import kotlinx.parcelize.Parcelize
 
@@ -68,10 +69,22 @@ enum class ThreeDSecureStatus : Parcelable {
         @ToJson
         fun toJson(status: ThreeDSecureStatus): String = status.name.lowercase()
 
-        @FromJson
         fun fromJson(status: String): ThreeDSecureStatus {
-            return entries.firstOrNull { it.name.lowercase() == status }
-                ?: throw JsonDataException("unknown status: $status")
+            return JsonValues.ALL[status] ?: throw JsonDataException("unknown status: $status")
+        }
+
+        @FromJson
+        fun fromJson(reader: JsonReader): ThreeDSecureStatus? {
+            if (reader.peek() == JsonReader.Token.NULL) {
+                return reader.nextNull()
+            }
+            val index = reader.selectString(JsonValues.OPTIONS)
+            return if (index >= 0) entries[index] else fromJson(reader.nextString())
         }
     }
+
+    private object JsonValues {
+        val ALL: Map<String, ThreeDSecureStatus> = entries.associateBy { it.name.lowercase() }
+        val OPTIONS: JsonReader.Options = JsonReader.Options.of(*entries.map { it.name.lowercase() }.toTypedArray())
+    }
 }
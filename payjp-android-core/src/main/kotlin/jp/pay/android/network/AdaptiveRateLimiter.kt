@@ -0,0 +1,135 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import android.os.SystemClock
+import java.util.concurrent.TimeUnit
+
+/**
+ * Token bucket which adapts its rate to responses of the server (AIMD).
+ * It does not limit requests until the server returns a rate limit error.
+ * Each rate limit error halves the rate down to [minPermitsPerSecond]
+ * and blocks all requests during `Retry-After` (or one interval of the new rate).
+ * Each success increases the rate additively, and the limit is lifted when it recovers to [maxPermitsPerSecond].
+ *
+ * @param burst max number of permits which can be stored.
+ * @param maxPermitsPerSecond max rate. The first rate limit error halves it.
+ * @param minPermitsPerSecond min rate.
+ * @param increasePermitsPerSecond rate added on each success.
+ * @param clock current time in millis.
+ */
+internal class AdaptiveRateLimiter(
+    private val burst: Double = DEFAULT_BURST,
+    private val maxPermitsPerSecond: Double = DEFAULT_MAX_PERMITS_PER_SECOND,
+    private val minPermitsPerSecond: Double = DEFAULT_MIN_PERMITS_PER_SECOND,
+    private val increasePermitsPerSecond: Double = DEFAULT_INCREASE_PERMITS_PER_SECOND,
+    private val clock: () -> Long = SystemClock::elapsedRealtime
+) {
+
+    private var limiting = false
+    private var permitsPerSecond = maxPermitsPerSecond
+    private var permits = burst
+    private var refilledAt = 0L
+    private var blockedUntil = 0L
+
+    /**
+     * Current rate, or null if requests are not limited.
+     */
+    val rate: Double?
+        @Synchronized get() = permitsPerSecond.takeIf { limiting }
+
+    /**
+     * Reserve a permit.
+     *
+     * @param maxWaitMillis max time to wait for the permit.
+     * @return time to wait before the request, or null if it exceeds [maxWaitMillis] (nothing is reserved).
+     */
+    @Synchronized
+    fun tryReserve(maxWaitMillis: Long): Long? {
+        if (!limiting) {
+            return 0
+        }
+        val now = refill()
+        val wait = waitMillis(now)
+        if (wait > maxWaitMillis) {
+            return null
+        }
+        permits -= 1
+        return wait
+    }
+
+    /**
+     * @return time until the next permit is available.
+     */
+    @Synchronized
+    fun throttleMillis(): Long = if (limiting) waitMillis(refill()) else 0
+
+    @Synchronized
+    fun onSuccess() {
+        if (!limiting) {
+            return
+        }
+        permitsPerSecond = (permitsPerSecond + increasePermitsPerSecond).coerceAtMost(maxPermitsPerSecond)
+        if (permitsPerSecond >= maxPermitsPerSecond && clock() >= blockedUntil) {
+            limiting = false
+        }
+    }
+
+    /**
+     * @param retryAfterMillis time to wait told by the server.
+     */
+    @Synchronized
+    fun onRateLimited(retryAfterMillis: Long?) {
+        if (!limiting) {
+            limiting = true
+            permitsPerSecond = maxPermitsPerSecond
+            refilledAt = clock()
+        }
+        val now = refill()
+        permitsPerSecond = (permitsPerSecond / 2).coerceAtLeast(minPermitsPerSecond)
+        permits = minOf(permits, 0.0)
+        val blockMillis = retryAfterMillis ?: (TimeUnit.SECONDS.toMillis(1) / permitsPerSecond).toLong()
+        blockedUntil = maxOf(blockedUntil, now + blockMillis)
+    }
+
+    private fun refill(): Long {
+        val now = clock()
+        val elapsed = (now - maxOf(refilledAt, blockedUntil)).coerceAtLeast(0)
+        permits = (permits + elapsed * permitsPerSecond / 1000).coerceAtMost(burst)
+        refilledAt = maxOf(now, refilledAt)
+        return now
+    }
+
+    private fun waitMillis(now: Long): Long {
+        val blocked = (blockedUntil - now).coerceAtLeast(0)
+        val deficit = (1 - permits).coerceAtLeast(0.0)
+        return blocked + Math.ceil(deficit * 1000 / permitsPerSecond).toLong()
+    }
+
+    companion object {
+        const val DEFAULT_BURST = 3.0
+        const val DEFAULT_MAX_PERMITS_PER_SECOND = 2.0
+        const val DEFAULT_MIN_PERMITS_PER_SECOND = 0.1
+        const val DEFAULT_INCREASE_PERMITS_PER_SECOND = 0.2
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import jp.pay.android.PayjpLogger
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+
+/**
+ * Establish a connection (DNS, TCP and TLS) to the api server in advance,
+ * and leave it in the connection pool of [okHttpClient] for the following requests.
+ *
+ * @param okHttpClient client shared with api requests.
+ * @param baseUrl api base url
+ * @param logger logger
+ */
+internal class ConnectionPrewarmer(
+    private val okHttpClient: OkHttpClient,
+    baseUrl: String,
+    private val logger: PayjpLogger = PayjpLogger.None
+) {
+
+    private val request = Request.Builder().url(baseUrl).head().build()
+
+    /**
+     * Send a lightweight request in background.
+     * It is sent even if the pool has idle connections, because the pool may be shared with the app
+     * and hold connections to other hosts only. If a connection to the api server is pooled, OkHttp reuses it.
+     */
+    fun prewarm() {
+        okHttpClient.newCall(request).enqueue(
+            object : Callback {
+                override fun onResponse(call: Call, response: Response) {
+                    // Any status is fine, we only need the connection.
+                    response.close()
+                    logger.d("prewarm completed.")
+                }
+
+                override fun onFailure(call: Call, e: IOException) {
+                    logger.w("prewarm failed.", e)
+                }
+            }
+        )
+    }
+}
@@ -27,30 +27,47 @@ import jp.pay.android.model.ClientInfo
 import okhttp3.Interceptor
 import okhttp3.Response
 import java.util.Locale
+import java.util.concurrent.atomic.AtomicReference
 
 /**
  * Request interceptor
+ * Headers are computed when [ClientInfo] changes, not on each request.
  */
 internal class CustomHeaderInterceptor(
-    private val locale: Locale,
-    private var client: ClientInfo,
+    locale: Locale,
+    client: ClientInfo,
     moshi: Moshi
 ) : Interceptor, ClientInfoInterceptor {
 
+    /**
+     * Immutable snapshot of client info and its serialized header.
+     */
+    private class ClientHeader(val client: ClientInfo, val value: String)
+
     private val userAgent = UserAgent.create(client)
+    private val language = locale.language
     private val clientInfoAdapter = moshi.adapter<ClientInfo>(ClientInfo::class.java)
+    private val clientHeader = AtomicReference(createClientHeader(client))
 
     override fun intercept(chain: Interceptor.Chain): Response {
         val newRequest = chain.request().newBuilder()
             .header("user-agent", userAgent)
-            .header("locale", locale.language)
-            .header("X-Payjp-Client-User-Agent", clientInfoAdapter.toJson(client))
+            .header("locale", language)
+            .header("X-Payjp-Client-User-Agent", clientHeader.get().value)
             .build()
 
         return chain.proceed(newRequest)
     }
 
     override fun applyClientInfoExtra(func: ClientInfo.Builder.() -> Unit) {
-        client = client.toBuilder().apply(func).build()
+        while (true) {
+            val current = clientHeader.get()
+            val next = createClientHeader(current.client.toBuilder().apply(func).build())
+            if (clientHeader.compareAndSet(current, next)) {
+                return
+            }
+        }
     }
+
+    private fun createClientHeader(client: ClientInfo) = ClientHeader(client, clientInfoAdapter.toJson(client))
 }
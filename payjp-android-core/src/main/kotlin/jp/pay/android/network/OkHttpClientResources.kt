@@ -0,0 +1,53 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import okhttp3.OkHttpClient
+
+/**
+ * Resources of [OkHttpClient] owned by the SDK.
+ * The dispatcher and the connection pool shared with the app are never released.
+ *
+ * @param okHttpClient client
+ * @param ownsExecutorService true if the executor of the dispatcher is created by the SDK.
+ * @param ownsConnectionPool true if the connection pool is created by the SDK.
+ */
+internal class OkHttpClientResources(
+    private val okHttpClient: OkHttpClient,
+    private val ownsExecutorService: Boolean,
+    private val ownsConnectionPool: Boolean
+) {
+
+    /**
+     * Stop the threads and close the idle connections.
+     * The running requests are still completed.
+     */
+    fun release() {
+        if (ownsExecutorService) {
+            okHttpClient.dispatcher().executorService().shutdown()
+        }
+        if (ownsConnectionPool) {
+            okHttpClient.connectionPool().evictAll()
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import jp.pay.android.Task
+import jp.pay.android.exception.PayjpRateLimitException
+import jp.pay.android.exception.PayjpThrottledException
+import java.io.IOException
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Task which waits for a permit of [limiter] before running [task],
+ * and tells the result to [limiter].
+ * If the permit is not available within [maxWaitMillis], it fails with [PayjpThrottledException].
+ *
+ * @param limiter rate limiter
+ * @param scheduler scheduler to wait in [enqueue].
+ * @param callbackExecutor executor to notify errors which happen before [task] runs.
+ * @param maxWaitMillis max time to wait for a permit.
+ * @param task actual task
+ */
+internal class RateLimitedTask<T>(
+    private val limiter: AdaptiveRateLimiter,
+    private val scheduler: ScheduledExecutorService,
+    private val callbackExecutor: Executor,
+    private val maxWaitMillis: Long,
+    private val task: Task<T>
+) : Task<T> {
+
+    private val executed = AtomicBoolean()
+
+    @Volatile
+    private var canceled = false
+
+    @Volatile
+    private var pendingRun: ScheduledFuture<*>? = null
+
+    @Volatile
+    private var pendingCallback: Task.Callback<T>? = null
+
+    override fun run(): T {
+        check(executed.compareAndSet(false, true)) { "Already executed." }
+        val wait = reserve()
+        if (wait > 0) {
+            Thread.sleep(wait)
+        }
+        if (canceled) {
+            throw IOException("Canceled")
+        }
+        return try {
+            task.run().also { limiter.onSuccess() }
+        } catch (e: PayjpRateLimitException) {
+            limiter.onRateLimited(e.retryAfterSeconds?.let { TimeUnit.SECONDS.toMillis(it) })
+            throw e
+        }
+    }
+
+    override fun enqueue(callback: Task.Callback<T>) {
+        check(executed.compareAndSet(false, true)) { "Already executed." }
+        val wait = try {
+            reserve()
+        } catch (e: PayjpThrottledException) {
+            callbackExecutor.execute { callback.onError(e) }
+            return
+        }
+        if (wait <= 0) {
+            enqueueTask(callback)
+            return
+        }
+        pendingCallback = callback
+        try {
+            pendingRun = scheduler.schedule({ enqueueTask(callback) }, wait, TimeUnit.MILLISECONDS)
+        } catch (e: RejectedExecutionException) {
+            callbackExecutor.execute { callback.onError(e) }
+        }
+    }
+
+    override fun isExecuted(): Boolean = executed.get()
+
+    override fun cancel() {
+        canceled = true
+        task.cancel()
+        if (pendingRun?.cancel(false) == true) {
+            pendingCallback?.let { callback ->
+                callbackExecutor.execute { callback.onError(IOException("Canceled")) }
+            }
+        }
+    }
+
+    override fun isCanceled(): Boolean = canceled
+
+    private fun reserve(): Long =
+        limiter.tryReserve(maxWaitMillis) ?: throw PayjpThrottledException(limiter.throttleMillis())
+
+    private fun enqueueTask(callback: Task.Callback<T>) {
+        task.enqueue(
+            object : Task.Callback<T> {
+                override fun onSuccess(data: T) {
+                    limiter.onSuccess()
+                    callback.onSuccess(data)
+                }
+
+                override fun onError(throwable: Throwable) {
+                    if (throwable is PayjpRateLimitException) {
+                        limiter.onRateLimited(throwable.retryAfterSeconds?.let { TimeUnit.SECONDS.toMillis(it) })
+                    }
+                    callback.onError(throwable)
+                }
+            }
+        )
+    }
+}
@@ -22,7 +22,7 @@
  */
 package jp.pay.android.network
 
-import com.squareup.moshi.Moshi
+import com.squareup.moshi.JsonAdapter
 import jp.pay.android.Task
 import jp.pay.android.exception.PayjpApiException
 import jp.pay.android.exception.PayjpCardException
@@ -41,28 +41,39 @@ import java.util.concurrent.Executor
  * Custom call for wrapping response.
  *
  * @param T success type
+ * @param errorAdapter adapter for error response, shared among calls.
+ * @param keepErrorSource if true, keep the raw error body for [PayjpApiException.source].
  * @param delegate delegate call
  */
 internal class ResultCall<T>(
-    private val moshi: Moshi,
+    private val errorAdapter: JsonAdapter<ErrorEnvelope>,
     private val callbackExecutor: Executor,
+    private val keepErrorSource: Boolean,
     private val delegate: Call<T>
 ) : Call<T>, Task<T> {
 
     private fun generateHttpError(response: Response<*>): Exception {
         val baseException = HttpException(response)
-        return response.errorBody()?.string()
-            ?.let { source ->
-                moshi.adapter(ErrorEnvelope::class.java).fromJson(source)?.let { envelope ->
-                    val error = envelope.error
-                    val message = error.message
-                    when (val code = response.code()) {
-                        PayjpCardException.STATUS_CODE -> PayjpCardException(message, baseException, error, source)
-                        PayjpRateLimitException.STATUS_CODE -> PayjpRateLimitException(message, baseException, error, source)
-                        else -> PayjpApiException(message, baseException, code, error, source)
-                    }
+        return response.errorBody()?.use { body ->
+            val source = body.source()
+            // decode from the stream. the raw bytes are copied only if they are kept for `source`.
+            errorAdapter.fromJson(source.peek())?.let { envelope ->
+                val rawSource = if (keepErrorSource) {
+                    val raw = source.readByteString()
+                    lazy(LazyThreadSafetyMode.PUBLICATION) { raw.utf8() }
+                } else {
+                    lazyOf(null)
+                }
+                val error = envelope.error
+                val message = error.message
+                when (val code = response.code()) {
+                    PayjpCardException.STATUS_CODE -> PayjpCardException(message, baseException, error, rawSource)
+                    PayjpRateLimitException.STATUS_CODE ->
+                        PayjpRateLimitException(message, baseException, error, rawSource)
+                    else -> PayjpApiException(message, baseException, code, error, rawSource)
                 }
             }
+        }
             ?: RuntimeException("unknown response", baseException)
     }
 
@@ -119,7 +130,7 @@ internal class ResultCall<T>(
 
     override fun isCanceled(): Boolean = delegate.isCanceled
 
-    override fun clone(): Call<T> = ResultCall(moshi, callbackExecutor, delegate)
+    override fun clone(): Call<T> = ResultCall(errorAdapter, callbackExecutor, keepErrorSource, delegate.clone())
 
     override fun request(): Request = delegate.request()
 
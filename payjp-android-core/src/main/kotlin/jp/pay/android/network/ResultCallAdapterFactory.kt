@@ -24,6 +24,7 @@ package jp.pay.android.network
 
 import com.squareup.moshi.Moshi
 import com.squareup.moshi.Types.getRawType
+import jp.pay.android.model.ErrorEnvelope
 import retrofit2.Call
 import retrofit2.CallAdapter
 import retrofit2.Retrofit
@@ -33,12 +34,17 @@ import java.util.concurrent.Executor
 
 /**
  * ResultCallAdapterFactory
+ *
+ * @param keepErrorSource if true, error responses keep the raw body (for debugging).
  */
 internal class ResultCallAdapterFactory(
     private val moshi: Moshi,
-    private val callbackExecutor: Executor
+    private val callbackExecutor: Executor,
+    private val keepErrorSource: Boolean = false
 ) : CallAdapter.Factory() {
 
+    private val errorAdapter = moshi.adapter(ErrorEnvelope::class.java)
+
     private fun getResultResponseType(returnType: Type): Type {
         if (returnType !is ParameterizedType) {
             throw IllegalArgumentException(
@@ -62,7 +68,7 @@ internal class ResultCallAdapterFactory(
             override fun responseType(): Type = responseType
 
             override fun adapt(call: Call<Any>): Call<Any> {
-                return ResultCall(moshi, callbackExecutor, call)
+                return ResultCall(errorAdapter, callbackExecutor, keepErrorSource, call)
             }
         }
     }
@@ -0,0 +1,199 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import android.os.SystemClock
+import jp.pay.android.PayjpLogger
+import jp.pay.android.PayjpRetryPolicy
+import jp.pay.android.Task
+import jp.pay.android.exception.PayjpApiException
+import jp.pay.android.exception.PayjpRateLimitException
+import retrofit2.HttpException
+import java.io.IOException
+import java.util.Random
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Task which retries an idempotent request according to [PayjpRetryPolicy].
+ * Each attempt is a new call created by [newCall] because a call can be executed only once.
+ *
+ * @param policy retry policy
+ * @param scheduler scheduler to wait before retry in [enqueue].
+ * @param callbackExecutor executor to notify cancellation while waiting.
+ * @param newCall create a new call for each attempt.
+ */
+internal class RetryingTask<T>(
+    private val policy: PayjpRetryPolicy,
+    private val scheduler: ScheduledExecutorService,
+    private val callbackExecutor: Executor,
+    private val logger: PayjpLogger = PayjpLogger.None,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+    private val random: Random = Random(),
+    private val newCall: () -> ResultCall<T>
+) : Task<T> {
+
+    private val executed = AtomicBoolean()
+
+    @Volatile
+    private var canceled = false
+
+    @Volatile
+    private var currentCall: ResultCall<T>? = null
+
+    @Volatile
+    private var pendingRetry: ScheduledFuture<*>? = null
+
+    @Volatile
+    private var pendingCallback: Task.Callback<T>? = null
+
+    private var startedAt = 0L
+
+    override fun run(): T {
+        start()
+        var attempt = 0
+        while (true) {
+            try {
+                return nextCall().run()
+            } catch (e: Exception) {
+                val delay = nextDelayMillis(attempt++, e) ?: throw e
+                Thread.sleep(delay)
+            }
+        }
+    }
+
+    override fun enqueue(callback: Task.Callback<T>) {
+        start()
+        pendingCallback = callback
+        attempt(0, callback)
+    }
+
+    override fun isExecuted(): Boolean = executed.get()
+
+    override fun cancel() {
+        canceled = true
+        currentCall?.cancel()
+        if (pendingRetry?.cancel(false) == true) {
+            pendingCallback?.let { callback ->
+                callbackExecutor.execute { callback.onError(IOException("Canceled")) }
+            }
+        }
+    }
+
+    override fun isCanceled(): Boolean = canceled
+
+    private fun start() {
+        check(executed.compareAndSet(false, true)) { "Already executed." }
+        startedAt = clock()
+    }
+
+    private fun attempt(attempt: Int, callback: Task.Callback<T>) {
+        val call = try {
+            nextCall()
+        } catch (e: IOException) {
+            callbackExecutor.execute { callback.onError(e) }
+            return
+        }
+        call.enqueue(
+            object : Task.Callback<T> {
+                override fun onSuccess(data: T) = callback.onSuccess(data)
+
+                override fun onError(throwable: Throwable) {
+                    val delay = nextDelayMillis(attempt, throwable)
+                    if (delay == null) {
+                        callback.onError(throwable)
+                        return
+                    }
+                    try {
+                        pendingRetry = scheduler.schedule(
+                            { attempt(attempt + 1, callback) },
+                            delay,
+                            TimeUnit.MILLISECONDS
+                        )
+                    } catch (e: RejectedExecutionException) {
+                        callback.onError(throwable)
+                    }
+                }
+            }
+        )
+    }
+
+    private fun nextCall(): ResultCall<T> {
+        if (canceled) {
+            throw IOException("Canceled")
+        }
+        return newCall().also { call ->
+            if (policy.deadlineMillis > 0) {
+                val remaining = policy.deadlineMillis - (clock() - startedAt)
+                call.timeout().timeout(remaining.coerceAtLeast(1), TimeUnit.MILLISECONDS)
+            }
+            currentCall = call
+            // cancel() may have missed the new call.
+            if (canceled) {
+                call.cancel()
+            }
+        }
+    }
+
+    /**
+     * @return time to wait before the next attempt, or null if it should not be retried.
+     */
+    private fun nextDelayMillis(attempt: Int, error: Throwable): Long? {
+        if (canceled || attempt >= policy.maxRetries || !isRetryable(error)) {
+            return null
+        }
+        val retryAfter = retryAfterMillis(error)
+        if (retryAfter != null && retryAfter > policy.maxBackoffMillis) {
+            // the server asks to wait longer than we are allowed to, so surface the error.
+            return null
+        }
+        val delay = retryAfter ?: backoffMillis(attempt)
+        if (policy.deadlineMillis > 0 && clock() - startedAt + delay >= policy.deadlineMillis) {
+            return null
+        }
+        logger.d("retry #${attempt + 1} after ${delay}ms: $error")
+        return delay
+    }
+
+    private fun isRetryable(error: Throwable): Boolean = when (error) {
+        is PayjpRateLimitException -> true
+        is PayjpApiException -> error.httpStatusCode >= 500
+        is IOException -> true
+        is RuntimeException -> (error.cause as? HttpException)?.code()?.let { it >= 500 } ?: false
+        else -> false
+    }
+
+    private fun retryAfterMillis(error: Throwable): Long? = (error as? PayjpRateLimitException)
+        ?.retryAfterSeconds
+        ?.let { TimeUnit.SECONDS.toMillis(it) }
+
+    private fun backoffMillis(attempt: Int): Long {
+        val backoff = (policy.initialBackoffMillis * Math.pow(policy.multiplier, attempt.toDouble()))
+            .coerceAtMost(policy.maxBackoffMillis.toDouble())
+        return (backoff * (1.0 - policy.jitter * random.nextDouble())).toLong()
+    }
+}
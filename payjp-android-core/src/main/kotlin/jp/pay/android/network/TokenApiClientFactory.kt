@@ -30,6 +30,8 @@ import jp.pay.android.model.CardBrand
 import jp.pay.android.model.ClientInfo
 import jp.pay.android.model.DateUnixTimeJsonAdapter
 import jp.pay.android.model.ThreeDSecureStatus
+import okhttp3.Authenticator
+import okhttp3.CookieJar
 import okhttp3.Dispatcher
 import okhttp3.Interceptor
 import okhttp3.OkHttpClient
@@ -38,6 +40,8 @@ import retrofit2.Retrofit
 import retrofit2.converter.moshi.MoshiConverterFactory
 import java.util.Locale
 import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.TimeUnit
 
 /**
  * ApiClient factory
@@ -57,15 +61,37 @@ internal object TokenApiClientFactory {
         clientInfo: ClientInfo
     ): CustomHeaderInterceptor = CustomHeaderInterceptor(locale, clientInfo, moshi)
 
+    /**
+     * Create OkHttpClient for token api.
+     *
+     * @param baseUrl base url
+     * @param debuggable if true, log headers.
+     * @param interceptor header interceptor
+     * @param baseClient client of the app. If given, the connection pool and the dispatcher are shared with it.
+     * Other settings which can see or change requests, e.g. interceptors, cache and authenticator, are not shared
+     * because requests contain card data.
+     * @param executorService executor for the dispatcher. If null, it is shared with [baseClient] or newly created.
+     * @param connectTimeoutMillis connect timeout. If null, the default of the client is used.
+     * @param readTimeoutMillis read and write timeout. If null, the default of the client is used.
+     */
     fun createOkHttp(
         baseUrl: String,
         debuggable: Boolean = false,
-        interceptor: Interceptor
+        interceptor: Interceptor,
+        baseClient: OkHttpClient? = null,
+        executorService: ExecutorService? = null,
+        connectTimeoutMillis: Long? = null,
+        readTimeoutMillis: Long? = null
     ): OkHttpClient =
-        OkHttpClient.Builder()
+        (baseClient?.newBuilder()?.apply { clearAppSettings() } ?: OkHttpClient.Builder())
             .retryOnConnectionFailure(false)
             .addInterceptor(interceptor)
             .apply {
+                connectTimeoutMillis?.let { connectTimeout(it, TimeUnit.MILLISECONDS) }
+                readTimeoutMillis?.let {
+                    readTimeout(it, TimeUnit.MILLISECONDS)
+                    writeTimeout(it, TimeUnit.MILLISECONDS)
+                }
                 if (debuggable) {
                     addNetworkInterceptor(
                         HttpLoggingInterceptor()
@@ -76,17 +102,38 @@ internal object TokenApiClientFactory {
             .let {
                 OkHttpTlsHelper.enableTls12OnPreLollipop(it, PayjpLogger.get(debuggable))
             }
-            .dispatcher(Dispatcher(NetworkExecutorFactory.create()))
+            .apply {
+                when {
+                    executorService != null -> dispatcher(Dispatcher(executorService))
+                    baseClient == null -> dispatcher(Dispatcher(NetworkExecutorFactory.create()))
+                }
+            }
             .build()
 
+    private fun OkHttpClient.Builder.clearAppSettings() {
+        interceptors().clear()
+        networkInterceptors().clear()
+        cache(null)
+        cookieJar(CookieJar.NO_COOKIES)
+        authenticator(Authenticator.NONE)
+        proxyAuthenticator(Authenticator.NONE)
+    }
+
+    /**
+     * Create api client.
+     *
+     * @param debuggable if true, keep the raw body of error responses
+     * as [jp.pay.android.exception.PayjpApiException.source].
+     */
     fun createApiClient(
         baseUrl: String,
         okHttpClient: OkHttpClient,
-        callbackExecutor: Executor
+        callbackExecutor: Executor,
+        debuggable: Boolean = false
     ): PayjpApi = Retrofit.Builder()
         .baseUrl(baseUrl)
         .client(okHttpClient)
-        .addCallAdapterFactory(ResultCallAdapterFactory(moshi, callbackExecutor))
+        .addCallAdapterFactory(ResultCallAdapterFactory(moshi, callbackExecutor, debuggable))
         .addConverterFactory(MoshiConverterFactory.create(moshi))
         .build()
         .create(PayjpApi::class.java)
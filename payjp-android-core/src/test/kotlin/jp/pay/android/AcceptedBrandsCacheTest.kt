@@ -0,0 +1,278 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.CardBrand
+import jp.pay.android.model.CardBrandsAcceptedResponse
+import jp.pay.android.model.TenantId
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.contains
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import java.util.concurrent.Executor
+
+/**
+ * [AcceptedBrandsCache]
+ */
+@RunWith(AndroidJUnit4::class)
+class AcceptedBrandsCacheTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val currentThreadExecutor = Executor { it.run() }
+    private val visa = CardBrandsAcceptedResponse(brands = listOf(CardBrand.VISA), livemode = false)
+    private val jcb = CardBrandsAcceptedResponse(brands = listOf(CardBrand.JCB), livemode = false)
+
+    /**
+     * Loader which holds callbacks until [respond] is called.
+     */
+    private class PendingLoader {
+        var count = 0
+        val callbacks = mutableListOf<Task.Callback<CardBrandsAcceptedResponse>>()
+
+        fun load(@Suppress("UNUSED_PARAMETER") tenantId: TenantId?): Task<CardBrandsAcceptedResponse> {
+            count++
+            return object : Task<CardBrandsAcceptedResponse> {
+                override fun run(): CardBrandsAcceptedResponse = throw UnsupportedOperationException()
+
+                override fun enqueue(callback: Task.Callback<CardBrandsAcceptedResponse>) {
+                    callbacks.add(callback)
+                }
+
+                override fun isExecuted(): Boolean = true
+
+                override fun cancel() {}
+
+                override fun isCanceled(): Boolean = false
+            }
+        }
+
+        fun respond(response: CardBrandsAcceptedResponse) {
+            callbacks.toList().also { callbacks.clear() }.forEach { it.onSuccess(response) }
+        }
+    }
+
+    private class RecordingCallback : Task.Callback<CardBrandsAcceptedResponse> {
+        val results = mutableListOf<CardBrandsAcceptedResponse>()
+
+        override fun onSuccess(data: CardBrandsAcceptedResponse) {
+            results.add(data)
+        }
+
+        override fun onError(throwable: Throwable) {
+            throw throwable
+        }
+    }
+
+    private fun createCache(
+        loader: PendingLoader,
+        now: () -> Long,
+        ttl: Long = 100L,
+        swr: Long = 100L,
+        store: AcceptedBrandsStore? = null
+    ) = AcceptedBrandsCache(
+        ttlMillis = ttl,
+        staleWhileRevalidateMillis = swr,
+        callbackExecutor = currentThreadExecutor,
+        clock = now,
+        store = store,
+        ioExecutor = currentThreadExecutor,
+        loader = loader::load
+    )
+
+    @Test
+    fun concurrent_requests_are_coalesced() {
+        val loader = PendingLoader()
+        val cache = createCache(loader, now = { 0L })
+        val callback1 = RecordingCallback()
+        val callback2 = RecordingCallback()
+
+        cache.get(null).enqueue(callback1)
+        cache.get(null).enqueue(callback2)
+        loader.respond(visa)
+
+        assertThat(loader.count, `is`(1))
+        assertThat(callback1.results, contains(visa))
+        assertThat(callback2.results, contains(visa))
+    }
+
+    @Test
+    fun fresh_response_is_returned_without_request() {
+        val loader = PendingLoader()
+        var now = 0L
+        val cache = createCache(loader, now = { now })
+        cache.get(null).enqueue(RecordingCallback())
+        loader.respond(visa)
+
+        now = 99L
+        val callback = RecordingCallback()
+        cache.get(null).enqueue(callback)
+
+        assertThat(loader.count, `is`(1))
+        assertThat(callback.results, contains(visa))
+        assertThat(cache.get(null).run(), `is`(visa))
+    }
+
+    @Test
+    fun stale_response_is_returned_while_revalidating() {
+        val loader = PendingLoader()
+        var now = 0L
+        val cache = createCache(loader, now = { now })
+        cache.get(null).enqueue(RecordingCallback())
+        loader.respond(visa)
+
+        now = 150L
+        val staleCallback = RecordingCallback()
+        cache.get(null).enqueue(staleCallback)
+        cache.get(null).enqueue(RecordingCallback())
+
+        assertThat(staleCallback.results, contains(visa))
+        assertThat(loader.count, `is`(2))
+
+        loader.respond(jcb)
+        val freshCallback = RecordingCallback()
+        cache.get(null).enqueue(freshCallback)
+
+        assertThat(freshCallback.results, contains(jcb))
+        assertThat(loader.count, `is`(2))
+    }
+
+    @Test
+    fun expired_response_is_fetched_again() {
+        val loader = PendingLoader()
+        var now = 0L
+        val cache = createCache(loader, now = { now })
+        cache.get(null).enqueue(RecordingCallback())
+        loader.respond(visa)
+
+        now = 200L
+        val callback = RecordingCallback()
+        cache.get(null).enqueue(callback)
+        assertThat(callback.results.size, `is`(0))
+        loader.respond(jcb)
+
+        assertThat(loader.count, `is`(2))
+        assertThat(callback.results, contains(jcb))
+    }
+
+    @Test
+    fun responses_are_cached_for_each_tenant() {
+        val loader = PendingLoader()
+        val cache = createCache(loader, now = { 0L })
+        val callback1 = RecordingCallback()
+        val callback2 = RecordingCallback()
+
+        cache.get(null).enqueue(callback1)
+        cache.get(TenantId("ten_123")).enqueue(callback2)
+
+        assertThat(loader.count, `is`(2))
+    }
+
+    @Test
+    fun canceled_task_is_not_notified() {
+        val loader = PendingLoader()
+        val cache = createCache(loader, now = { 0L })
+        val callback = RecordingCallback()
+
+        cache.get(null).apply { enqueue(callback) }.cancel()
+        loader.respond(visa)
+
+        assertThat(callback.results.size, `is`(0))
+    }
+
+    @Test
+    fun zero_ttl_disables_cache() {
+        val loader = PendingLoader()
+        val cache = createCache(loader, now = { 0L }, ttl = 0L)
+
+        cache.get(null).enqueue(RecordingCallback())
+        loader.respond(visa)
+        cache.get(null).enqueue(RecordingCallback())
+
+        assertThat(loader.count, `is`(2))
+    }
+
+    @Test
+    fun saved_brands_are_returned_and_revalidated() {
+        val store = AcceptedBrandsStore(folder.newFolder(), "pk_test_123")
+        store.save(mapOf(null to visa))
+        val loader = PendingLoader()
+        val cache = createCache(loader, now = { 0L }, swr = 0L, store = store)
+
+        val callback = RecordingCallback()
+        cache.get(null).enqueue(callback)
+
+        assertThat(callback.results, contains(visa))
+        assertThat(loader.count, `is`(1))
+
+        loader.respond(jcb)
+        cache.get(null).enqueue(RecordingCallback())
+
+        assertThat(loader.count, `is`(1))
+        assertThat(store.load()[null], `is`(jcb))
+        assertThat(cache.stats(), `is`(AcceptedBrandsCacheStats(1, 0, 1, 0)))
+    }
+
+    @Test
+    fun blocking_request_failed_with_error_does_not_leave_flight() {
+        var count = 0
+        val failing = object : Task<CardBrandsAcceptedResponse> {
+            override fun run(): CardBrandsAcceptedResponse = throw OutOfMemoryError("boom")
+
+            override fun enqueue(callback: Task.Callback<CardBrandsAcceptedResponse>) {}
+
+            override fun isExecuted(): Boolean = true
+
+            override fun cancel() {}
+
+            override fun isCanceled(): Boolean = false
+        }
+        val cache = AcceptedBrandsCache(
+            ttlMillis = 100L,
+            staleWhileRevalidateMillis = 100L,
+            callbackExecutor = currentThreadExecutor,
+            clock = { 0L },
+            loader = {
+                count++
+                failing
+            }
+        )
+
+        repeat(2) {
+            try {
+                cache.get(null).run()
+                fail()
+            } catch (e: OutOfMemoryError) {
+                assertThat(e.message, `is`("boom"))
+            }
+        }
+        // the second request is not blocked by the failed flight.
+        assertThat(count, `is`(2))
+    }
+}
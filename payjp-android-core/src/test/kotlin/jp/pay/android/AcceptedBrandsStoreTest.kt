@@ -0,0 +1,116 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.CardBrand
+import jp.pay.android.model.CardBrandsAcceptedResponse
+import jp.pay.android.model.TenantId
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+
+/**
+ * [AcceptedBrandsStore]
+ */
+@RunWith(AndroidJUnit4::class)
+class AcceptedBrandsStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val brands = mapOf(
+        null to CardBrandsAcceptedResponse(listOf(CardBrand.VISA, CardBrand.JCB), livemode = false),
+        TenantId("ten_123") to CardBrandsAcceptedResponse(listOf(CardBrand.AMEX), livemode = true)
+    )
+
+    @Test
+    fun load_saved_brands() {
+        val directory = folder.newFolder()
+        AcceptedBrandsStore(directory, "pk_test_123").save(brands)
+
+        assertThat(AcceptedBrandsStore(directory, "pk_test_123").load(), `is`(brands))
+    }
+
+    @Test
+    fun brands_are_saved_for_each_public_key() {
+        val directory = folder.newFolder()
+        AcceptedBrandsStore(directory, "pk_test_123").save(brands)
+
+        assertThat(AcceptedBrandsStore(directory, "pk_test_456").load().isEmpty(), `is`(true))
+    }
+
+    @Test
+    fun broken_file_is_ignored() {
+        val directory = folder.newFolder()
+        val store = AcceptedBrandsStore(directory, "pk_test_123")
+        store.save(brands)
+        directory.listFiles()?.forEach { it.writeText("{\"entries\": [{\"tenant\": 1") }
+
+        assertThat(store.load().isEmpty(), `is`(true))
+    }
+
+    @Test
+    fun expired_brands_are_dropped() {
+        val directory = folder.newFolder()
+        var now = 0L
+        val createStore = { AcceptedBrandsStore(directory, "pk_test_123", maxAgeMillis = 100L, clock = { now }) }
+        createStore().save(brands)
+
+        now = 100L
+        assertThat(createStore().load(), `is`(brands))
+        now = 101L
+        assertThat(createStore().load().isEmpty(), `is`(true))
+    }
+
+    @Test
+    fun brands_without_saved_time_are_dropped() {
+        val directory = folder.newFolder()
+        val store = AcceptedBrandsStore(directory, "pk_test_123")
+        store.save(brands)
+        val oldVersion =
+            "{\"entries\": [{\"tenant\": null, \"card_types_supported\": [\"Visa\"], \"livemode\": false}]}"
+        directory.listFiles()?.forEach { it.writeText(oldVersion) }
+
+        assertThat(store.load().isEmpty(), `is`(true))
+    }
+
+    @Test
+    fun unchanged_brands_keep_saved_time() {
+        val directory = folder.newFolder()
+        var now = 0L
+        val store = AcceptedBrandsStore(directory, "pk_test_123", maxAgeMillis = 100L, clock = { now })
+        store.save(brands)
+
+        now = 50L
+        store.load()
+        // only the brands of the default tenant are fetched again.
+        store.save(brands, unchanged = setOf(TenantId("ten_123")))
+
+        now = 120L
+        assertThat(store.load(), `is`(mapOf(null to brands[null])))
+    }
+}
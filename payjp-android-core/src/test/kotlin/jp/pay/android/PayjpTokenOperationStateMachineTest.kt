@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.hamcrest.Matchers.`is`
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class PayjpTokenOperationStateMachineTest {
+
+    private var now = 0L
+    private val scheduled = mutableListOf<Pair<Long, Runnable>>()
+
+    private val scheduler = object : PayjpTokenOperationStateMachine.Scheduler {
+        override fun execute(action: Runnable) = action.run()
+
+        override fun schedule(action: Runnable, delayMillis: Long) {
+            scheduled.add(now + delayMillis to action)
+        }
+    }
+
+    private fun createStateMachine() = PayjpTokenOperationStateMachine(
+        clock = { now },
+        scheduler = scheduler,
+        minThrottleMillis = 2000
+    )
+
+    private fun advanceTo(time: Long) {
+        now = time
+        scheduled.filter { it.first <= time }.forEach {
+            scheduled.remove(it)
+            it.second.run()
+        }
+    }
+
+    @Test
+    fun status_changes_through_request() {
+        val machine = createStateMachine()
+        val statuses = mutableListOf<PayjpTokenOperationStatus>()
+        machine.addListener { statuses.add(it) }
+
+        machine.startRequest()
+        machine.completeRequest()
+        advanceTo(1999)
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.THROTTLED))
+        advanceTo(2000)
+
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.ACCEPTABLE))
+        assertThat(
+            statuses,
+            contains(
+                PayjpTokenOperationStatus.RUNNING,
+                PayjpTokenOperationStatus.THROTTLED,
+                PayjpTokenOperationStatus.ACCEPTABLE
+            )
+        )
+    }
+
+    @Test
+    fun status_is_running_while_another_request_is_running() {
+        val machine = createStateMachine()
+
+        machine.startRequest()
+        machine.startRequest()
+        machine.completeRequest()
+
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.RUNNING))
+        machine.completeRequest()
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.THROTTLED))
+    }
+
+    @Test
+    fun throttle_extends_to_given_duration() {
+        val machine = createStateMachine()
+
+        machine.startRequest()
+        machine.completeRequest(throttleMillis = 5000)
+        advanceTo(4999)
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.THROTTLED))
+        advanceTo(5000)
+
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.ACCEPTABLE))
+    }
+
+    @Test
+    fun status_is_computed_without_scheduler() {
+        val machine = createStateMachine()
+
+        machine.startRequest()
+        machine.completeRequest()
+        now = 2000
+
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.ACCEPTABLE))
+    }
+
+    @Test
+    fun removed_listener_is_not_notified() {
+        val machine = createStateMachine()
+        val statuses = mutableListOf<PayjpTokenOperationStatus>()
+        val listener = PayjpTokenOperationObserverService.TokenRequestStatusListener { statuses.add(it) }
+        machine.addListener(listener)
+        machine.removeListener(listener)
+
+        machine.startRequest()
+
+        assertThat(statuses, empty())
+    }
+
+    @Test
+    fun concurrent_requests_are_counted() {
+        val machine = PayjpTokenOperationStateMachine(
+            clock = { now },
+            scheduler = object : PayjpTokenOperationStateMachine.Scheduler {
+                override fun execute(action: Runnable) = action.run()
+
+                override fun schedule(action: Runnable, delayMillis: Long) {}
+            }
+        )
+        val executor = Executors.newFixedThreadPool(8)
+        val latch = CountDownLatch(1000)
+
+        repeat(1000) {
+            executor.execute {
+                machine.startRequest()
+                machine.completeRequest()
+                latch.countDown()
+            }
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), `is`(true))
+        assertThat(machine.status, `is`(PayjpTokenOperationStatus.THROTTLED))
+        executor.shutdown()
+    }
+}
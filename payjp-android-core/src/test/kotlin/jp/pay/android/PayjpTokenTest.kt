@@ -26,6 +26,7 @@ import androidx.test.ext.junit.runners.AndroidJUnit4
 import jp.pay.android.exception.PayjpApiException
 import jp.pay.android.exception.PayjpCardException
 import jp.pay.android.exception.PayjpRateLimitException
+import jp.pay.android.exception.PayjpThrottledException
 import jp.pay.android.fixtures.ACCEPTED_BRANDS_EMPTY
 import jp.pay.android.fixtures.ACCEPTED_BRANDS_FULL
 import jp.pay.android.fixtures.ERROR_AUTH
@@ -37,14 +38,17 @@ import jp.pay.android.model.CardBrand
 import jp.pay.android.model.ClientInfo
 import jp.pay.android.model.TenantId
 import jp.pay.android.model.TokenId
+import jp.pay.android.network.ConnectionPrewarmer
 import jp.pay.android.network.TokenApiClientFactory.createApiClient
 import jp.pay.android.network.TokenApiClientFactory.createHeaderInterceptor
 import jp.pay.android.network.TokenApiClientFactory.createOkHttp
+import okhttp3.OkHttpClient
 import okhttp3.mockwebserver.MockResponse
 import okhttp3.mockwebserver.MockWebServer
 import org.hamcrest.MatcherAssert.assertThat
 import org.hamcrest.Matchers.contains
 import org.hamcrest.Matchers.empty
+import org.hamcrest.Matchers.greaterThanOrEqualTo
 import org.junit.After
 import org.junit.Assert.assertEquals
 import org.junit.Assert.fail
@@ -57,6 +61,7 @@ import java.nio.charset.Charset
 import java.util.Locale
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 /**
  * [PayjpToken]
@@ -92,14 +97,16 @@ class PayjpTokenTest {
         clientInfo = ClientInfo.Builder().build()
     )
 
-    private fun createTokenService(): PayjpTokenService =
+    private fun createTokenService(
+        configuration: PayjpTokenConfiguration = this.configuration
+    ): PayjpTokenService =
         PayjpToken(
             configuration = configuration,
             interceptor = createInterceptor(),
-            payjpApi = createApi()
+            payjpApi = createApi(debuggable = configuration.debugEnabled)
         )
 
-    private fun createApi(): PayjpApi {
+    private fun createApi(debuggable: Boolean): PayjpApi {
         val baseUrl = mockWebServer.url("/").toString()
         return createApiClient(
             baseUrl = baseUrl,
@@ -108,7 +115,8 @@ class PayjpTokenTest {
                 debuggable = false,
                 interceptor = createInterceptor()
             ),
-            callbackExecutor = CurrentThreadExecutor()
+            callbackExecutor = CurrentThreadExecutor(),
+            debuggable = debuggable
         )
     }
 
@@ -319,6 +327,37 @@ class PayjpTokenTest {
         }
     }
 
+    @Test
+    fun createToken_card_error_without_source_if_not_debug() {
+        mockWebServer.enqueue(MockResponse().setResponseCode(402).setBody(ERROR_CARD_DECLINED))
+
+        val task = createTokenService(
+            PayjpTokenConfiguration(
+                publicKey = configuration.publicKey,
+                debugEnabled = false,
+                locale = Locale.getDefault(),
+                callbackExecutor = CurrentThreadExecutor(),
+                clientInfo = ClientInfo.Builder().build()
+            )
+        )
+            .createToken(
+                number = "4242424242424242",
+                cvc = "123",
+                expMonth = "02",
+                expYear = "2020",
+                name = "TARO YAMADA"
+            )
+
+        try {
+            task.run()
+            fail()
+        } catch (e: PayjpCardException) {
+            assertEquals("Card declined", e.message)
+            assertEquals("card_declined", e.apiError.code)
+            assertEquals(null, e.source)
+        }
+    }
+
     @Test
     fun createToken_server_error() {
         mockWebServer.enqueue(MockResponse().setResponseCode(501))
@@ -339,6 +378,73 @@ class PayjpTokenTest {
         }
     }
 
+    @Test
+    fun createToken_throttled_locally_after_over_capacity_error() {
+        mockWebServer.enqueue(
+            MockResponse().setResponseCode(429).setHeader("Retry-After", "60").setBody(ERROR_OVER_CAPACITY)
+        )
+        val tokenService = createTokenService()
+        val createToken = {
+            tokenService.createToken(
+                number = "4242424242424242",
+                cvc = "123",
+                expMonth = "02",
+                expYear = "2020",
+                name = "TARO YAMADA"
+            )
+        }
+
+        try {
+            createToken().run()
+            fail()
+        } catch (e: PayjpRateLimitException) {
+            assertEquals(60L, e.retryAfterSeconds)
+        }
+        try {
+            createToken().run()
+            fail()
+        } catch (e: PayjpThrottledException) {
+            assertThat(e.retryAfterMillis, greaterThanOrEqualTo(TimeUnit.SECONDS.toMillis(60)))
+        }
+        assertEquals(1, mockWebServer.requestCount)
+    }
+
+    @Test
+    fun createToken_not_throttled_if_rate_limit_disabled() {
+        mockWebServer.enqueue(
+            MockResponse().setResponseCode(429).setHeader("Retry-After", "60").setBody(ERROR_OVER_CAPACITY)
+        )
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+        val tokenService = createTokenService(
+            PayjpTokenConfiguration(
+                publicKey = configuration.publicKey,
+                debugEnabled = true,
+                locale = Locale.getDefault(),
+                callbackExecutor = CurrentThreadExecutor(),
+                clientInfo = ClientInfo.Builder().build(),
+                rateLimitEnabled = false
+            )
+        )
+        val createToken = {
+            tokenService.createToken(
+                number = "4242424242424242",
+                cvc = "123",
+                expMonth = "02",
+                expYear = "2020",
+                name = "TARO YAMADA"
+            )
+        }
+
+        try {
+            createToken().run()
+            fail()
+        } catch (e: PayjpRateLimitException) {
+            assertEquals(60L, e.retryAfterSeconds)
+        }
+        assertEquals("tok_5ca06b51685e001723a2c3b4aeb4", createToken().run().id)
+        assertEquals(2, mockWebServer.requestCount)
+    }
+
     @Test
     fun createToken_over_capacity_error() {
         mockWebServer.enqueue(MockResponse().setResponseCode(429).setBody(ERROR_OVER_CAPACITY))
@@ -557,4 +663,95 @@ class PayjpTokenTest {
                 )
             }
     }
+
+    private fun createPrewarmableTokenService(): Pair<PayjpTokenService, OkHttpClient> {
+        val baseUrl = mockWebServer.url("/").toString()
+        val okHttpClient = createOkHttp(
+            baseUrl = baseUrl,
+            debuggable = false,
+            interceptor = createInterceptor()
+        )
+        val tokenService = PayjpToken(
+            configuration = configuration,
+            interceptor = createInterceptor(),
+            payjpApi = createApiClient(
+                baseUrl = baseUrl,
+                okHttpClient = okHttpClient,
+                callbackExecutor = CurrentThreadExecutor()
+            ),
+            connectionPrewarmer = ConnectionPrewarmer(okHttpClient, baseUrl)
+        )
+        return tokenService to okHttpClient
+    }
+
+    private fun awaitIdleConnection(okHttpClient: OkHttpClient) {
+        val deadline = System.currentTimeMillis() + 5000
+        while (okHttpClient.connectionPool().idleConnectionCount() == 0) {
+            check(System.currentTimeMillis() < deadline) { "connection is not pooled." }
+            Thread.sleep(10)
+        }
+    }
+
+    @Test
+    fun getToken_without_prewarm_opens_connection() {
+        val (tokenService, _) = createPrewarmableTokenService()
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+
+        tokenService.getToken("tok_5ca06b51685e001723a2c3b4aeb4").run()
+
+        // the first request on a new connection
+        assertEquals(0, mockWebServer.takeRequest().sequenceNumber)
+    }
+
+    @Test
+    fun getToken_after_prewarm_reuses_connection() {
+        val (tokenService, okHttpClient) = createPrewarmableTokenService()
+        mockWebServer.enqueue(MockResponse().setResponseCode(404))
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+
+        tokenService.prewarm()
+        val prewarm = mockWebServer.takeRequest(5, TimeUnit.SECONDS)
+        assertEquals("HEAD", prewarm?.method)
+        assertEquals(0, prewarm?.sequenceNumber)
+        awaitIdleConnection(okHttpClient)
+
+        tokenService.getToken("tok_5ca06b51685e001723a2c3b4aeb4").run()
+
+        // the second request on the same connection
+        assertEquals(1, mockWebServer.takeRequest().sequenceNumber)
+    }
+
+    @Test
+    fun prewarm_sends_request_even_if_connection_is_pooled() {
+        val (tokenService, okHttpClient) = createPrewarmableTokenService()
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+        mockWebServer.enqueue(MockResponse().setResponseCode(404))
+        tokenService.getToken("tok_5ca06b51685e001723a2c3b4aeb4").run()
+        mockWebServer.takeRequest()
+        awaitIdleConnection(okHttpClient)
+
+        tokenService.prewarm()
+
+        // the pool may hold connections to other hosts when it is shared with the app.
+        assertEquals("HEAD", mockWebServer.takeRequest(5, TimeUnit.SECONDS)?.method)
+    }
+
+    @Test
+    fun createToken_after_shutdown_fails() {
+        val tokenService = createTokenService()
+        tokenService.shutdown()
+
+        try {
+            tokenService.createToken(
+                number = "4242424242424242",
+                cvc = "123",
+                expMonth = "02",
+                expYear = "2020",
+                name = "TARO YAMADA"
+            ).run()
+            fail()
+        } catch (e: IllegalStateException) {
+            assertEquals(0, mockWebServer.requestCount)
+        }
+    }
 }
@@ -0,0 +1,238 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.Token
+import jp.pay.android.util.Tasks
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.instanceOf
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.IOException
+import java.util.concurrent.Executor
+
+@RunWith(AndroidJUnit4::class)
+class TokenBatchTaskTest {
+
+    private val callbackExecutor = Executor { it.run() }
+
+    /**
+     * Task completed manually by [complete].
+     */
+    private class PendingTask(val id: String, private val running: MutableList<PendingTask>) : Task<Token> {
+        private var callback: Task.Callback<Token>? = null
+        private var canceled = false
+
+        fun complete() {
+            running.remove(this)
+            callback?.onSuccess(TestStubs.newToken(id = id))
+        }
+
+        override fun run(): Token = throw UnsupportedOperationException()
+
+        override fun enqueue(callback: Task.Callback<Token>) {
+            this.callback = callback
+            running.add(this)
+        }
+
+        override fun isExecuted(): Boolean = callback != null
+
+        override fun cancel() {
+            canceled = true
+            running.remove(this)
+            callback?.onError(IOException("Canceled"))
+        }
+
+        override fun isCanceled(): Boolean = canceled
+    }
+
+    @Test
+    fun run_collects_tokens_and_errors() {
+        val error = RuntimeException("not found")
+        val task = TokenBatchTask(
+            listOf("tok_1", "tok_2", "tok_3"),
+            parallelism = 2,
+            callbackExecutor = callbackExecutor
+        ) { id ->
+            if (id == "tok_2") Tasks.failure(error) else Tasks.success(TestStubs.newToken(id = id))
+        }
+
+        val result = task.run()
+
+        assertThat(result.tokens.keys, `is`(setOf("tok_1", "tok_3")))
+        assertThat(result.errors, `is`(mapOf<String, Throwable>("tok_2" to error)))
+        assertThat(result.isComplete, `is`(false))
+    }
+
+    @Test
+    fun run_requests_duplicate_ids_once() {
+        val requested = mutableListOf<String>()
+        val task = TokenBatchTask(
+            listOf("tok_1", "tok_2", "tok_1"),
+            parallelism = 2,
+            callbackExecutor = callbackExecutor
+        ) { id ->
+            requested.add(id)
+            Tasks.success(TestStubs.newToken(id = id))
+        }
+
+        val result = task.run()
+
+        assertThat(requested, `is`(listOf("tok_1", "tok_2")))
+        assertThat(result.tokens.size, `is`(2))
+    }
+
+    @Test
+    fun run_empty_ids() {
+        val result = TokenBatchTask(
+            emptyList(),
+            parallelism = 2,
+            callbackExecutor = callbackExecutor
+        ) { Tasks.never() }.run()
+
+        assertThat(result.tokens.isEmpty(), `is`(true))
+        assertThat(result.isComplete, `is`(true))
+    }
+
+    @Test
+    fun enqueue_limits_concurrency() {
+        val running = mutableListOf<PendingTask>()
+        var result: PayjpTokenBatchResult? = null
+        val task = TokenBatchTask(
+            (1..5).map { "tok_$it" },
+            parallelism = 2,
+            callbackExecutor = callbackExecutor
+        ) { id ->
+            PendingTask(id, running)
+        }
+
+        task.enqueue(
+            object : Task.Callback<PayjpTokenBatchResult> {
+                override fun onSuccess(data: PayjpTokenBatchResult) {
+                    result = data
+                }
+
+                override fun onError(throwable: Throwable) {}
+            }
+        )
+
+        repeat(5) {
+            assertThat(running.size <= 2, `is`(true))
+            running.first().complete()
+        }
+        assertThat(running.size, `is`(0))
+        assertThat(result?.tokens?.size, `is`(5))
+    }
+
+    @Test
+    fun run_completes_many_synchronous_tasks_without_recursion() {
+        val ids = (1..20_000).map { "tok_$it" }
+        val task = TokenBatchTask(ids, parallelism = 1, callbackExecutor = callbackExecutor) { id ->
+            Tasks.success(TestStubs.newToken(id = id))
+        }
+
+        val result = task.run()
+
+        assertThat(result.tokens.size, `is`(20_000))
+    }
+
+    @Test
+    fun enqueue_empty_ids_notifies_on_callback_executor() {
+        val posted = mutableListOf<Runnable>()
+        var result: PayjpTokenBatchResult? = null
+        val task = TokenBatchTask(emptyList(), parallelism = 2, callbackExecutor = Executor { posted.add(it) }) {
+            Tasks.never()
+        }
+
+        task.enqueue(
+            object : Task.Callback<PayjpTokenBatchResult> {
+                override fun onSuccess(data: PayjpTokenBatchResult) {
+                    result = data
+                }
+
+                override fun onError(throwable: Throwable) {}
+            }
+        )
+
+        assertThat(result, `is`(nullValue()))
+        posted.forEach { it.run() }
+        assertThat(result?.isComplete, `is`(true))
+    }
+
+    @Test
+    fun cancel_notifies_error() {
+        val running = mutableListOf<PendingTask>()
+        var result: PayjpTokenBatchResult? = null
+        var error: Throwable? = null
+        val task = TokenBatchTask(
+            (1..5).map { "tok_$it" },
+            parallelism = 2,
+            callbackExecutor = callbackExecutor
+        ) { id ->
+            PendingTask(id, running)
+        }
+        task.enqueue(
+            object : Task.Callback<PayjpTokenBatchResult> {
+                override fun onSuccess(data: PayjpTokenBatchResult) {
+                    result = data
+                }
+
+                override fun onError(throwable: Throwable) {
+                    error = throwable
+                }
+            }
+        )
+
+        running.first().complete()
+        task.cancel()
+
+        assertThat(result, `is`(nullValue()))
+        assertThat(error, instanceOf(IOException::class.java))
+        assertThat(running.size, `is`(0))
+    }
+
+    @Test
+    fun cancel_while_starting_cancels_new_task() {
+        val running = mutableListOf<PendingTask>()
+        val created = mutableListOf<PendingTask>()
+        lateinit var task: TokenBatchTask
+        task = TokenBatchTask(listOf("tok_1"), parallelism = 1, callbackExecutor = callbackExecutor) { id ->
+            // cancel() runs after the batch checked it but before the new task is registered.
+            task.cancel()
+            PendingTask(id, running).also { created.add(it) }
+        }
+
+        task.enqueue(
+            object : Task.Callback<PayjpTokenBatchResult> {
+                override fun onSuccess(data: PayjpTokenBatchResult) {}
+
+                override fun onError(throwable: Throwable) {}
+            }
+        )
+
+        assertThat(created.single().isCanceled(), `is`(true))
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.Token
+import jp.pay.android.util.Tasks
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.sameInstance
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class TokenCacheTest {
+
+    private var now = 0L
+    private var loadCount = 0
+
+    private fun createCache(maxSize: Int = 2, ttlMillis: Long = 1000) = TokenCache(
+        maxSize = maxSize,
+        ttlMillis = ttlMillis,
+        callbackExecutor = { it.run() },
+        clock = { now }
+    )
+
+    private fun newToken(id: String, status: ThreeDSecureStatus? = null) =
+        TestStubs.newToken(id = id, card = TestStubs.newCard(threeDSecureStatus = status))
+
+    private fun loader(id: String): Task<Token> {
+        loadCount++
+        return Tasks.success(newToken(id))
+    }
+
+    @Test
+    fun get_returns_populated_token() {
+        val cache = createCache()
+        val token = cache.populate(Tasks.success(newToken("tok_1"))).run()
+
+        assertThat(cache.get("tok_1", ::loader).run(), sameInstance(token))
+        assertThat(loadCount, `is`(0))
+        assertThat(cache.stats(), `is`(TokenCacheStats(hitCount = 1, missCount = 0)))
+    }
+
+    @Test
+    fun get_loads_and_caches_on_miss() {
+        val cache = createCache()
+
+        cache.get("tok_1", ::loader).run()
+        cache.get("tok_1", ::loader).run()
+
+        assertThat(loadCount, `is`(1))
+        assertThat(cache.stats(), `is`(TokenCacheStats(hitCount = 1, missCount = 1)))
+    }
+
+    @Test
+    fun get_loads_after_ttl() {
+        val cache = createCache()
+        cache.put(newToken("tok_1"))
+
+        now += 1000
+        cache.get("tok_1", ::loader).run()
+
+        assertThat(loadCount, `is`(1))
+    }
+
+    @Test
+    fun put_evicts_least_recently_used() {
+        val cache = createCache(maxSize = 2)
+        cache.put(newToken("tok_1"))
+        cache.put(newToken("tok_2"))
+        cache.get("tok_1", ::loader).run()
+
+        cache.put(newToken("tok_3"))
+        cache.get("tok_1", ::loader).run()
+        cache.get("tok_2", ::loader).run()
+
+        assertThat(loadCount, `is`(1))
+        assertThat(cache.stats().missCount, `is`(1L))
+    }
+
+    @Test
+    fun unverified_token_is_not_cached() {
+        val cache = createCache()
+        cache.put(newToken("tok_1"))
+
+        cache.put(newToken("tok_1", ThreeDSecureStatus.UNVERIFIED))
+        cache.get("tok_1", ::loader).run()
+
+        assertThat(loadCount, `is`(1))
+    }
+
+    @Test
+    fun invalidate_removes_token() {
+        val cache = createCache()
+        cache.put(newToken("tok_1"))
+
+        cache.invalidate("tok_1")
+        cache.get("tok_1", ::loader).run()
+
+        assertThat(loadCount, `is`(1))
+    }
+
+    @Test
+    fun disabled_cache_always_loads() {
+        val cache = createCache(maxSize = 0)
+        cache.put(newToken("tok_1"))
+
+        cache.get("tok_1", ::loader).run()
+        cache.get("tok_1", ::loader).run()
+
+        assertThat(loadCount, `is`(2))
+        assertThat(cache.stats(), `is`(TokenCacheStats.EMPTY))
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.model
+
+import android.os.Bundle
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.squareup.moshi.JsonDataException
+import com.squareup.moshi.Moshi
+import jp.pay.android.network.TokenApiClientFactory
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * for [BundleJsonAdapter], [CardBrand.JsonAdapter] and [ThreeDSecureStatus.JsonAdapter] through [Moshi].
+ */
+@RunWith(AndroidJUnit4::class)
+class StreamingJsonAdapterTest {
+
+    private val moshi: Moshi = TokenApiClientFactory.moshi
+
+    @Test
+    fun metadata_keeps_values_as_map_of_json_values() {
+        val bundle = moshi.adapter(Bundle::class.java).fromJson(
+            """{"s": "a", "b": false, "i": 1, "d": 1.5, "n": null, "o": {"k": "v"}}"""
+        )!!
+
+        assertThat(bundle.getString("s"), `is`("a"))
+        assertThat(bundle.getBoolean("b", true), `is`(false))
+        assertThat(bundle.getString("i"), `is`("1.0"))
+        assertThat(bundle.getString("d"), `is`("1.5"))
+        assertThat(bundle.containsKey("n"), `is`(false))
+        assertThat(bundle.getString("o"), `is`("{k=v}"))
+    }
+
+    @Test
+    fun metadata_null() {
+        assertThat(moshi.adapter(Bundle::class.java).fromJson("null"), `is`(nullValue()))
+    }
+
+    @Test
+    fun brand_from_raw_value() {
+        val adapter = moshi.adapter(CardBrand::class.java)
+        CardBrand.values().filter { it != CardBrand.UNKNOWN }.forEach { brand ->
+            assertThat(adapter.fromJson("\"${brand.rawValue}\""), `is`(brand))
+        }
+    }
+
+    @Test(expected = JsonDataException::class)
+    fun brand_unknown_throws() {
+        moshi.adapter(CardBrand::class.java).fromJson("\"Unknown\"")
+    }
+
+    @Test
+    fun three_d_secure_status_from_json() {
+        val adapter = moshi.adapter(ThreeDSecureStatus::class.java)
+        assertThat(adapter.fromJson("\"attempted\""), `is`(ThreeDSecureStatus.ATTEMPTED))
+        assertThat(adapter.fromJson("null"), `is`(nullValue()))
+    }
+
+    @Test(expected = JsonDataException::class)
+    fun three_d_secure_status_unknown_throws() {
+        moshi.adapter(ThreeDSecureStatus::class.java).fromJson("\"VERIFIED\"")
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+
+class AdaptiveRateLimiterTest {
+
+    private var now = 1_000L
+
+    private fun createLimiter() = AdaptiveRateLimiter(
+        burst = 2.0,
+        maxPermitsPerSecond = 2.0,
+        minPermitsPerSecond = 0.5,
+        increasePermitsPerSecond = 0.5,
+        clock = { now }
+    )
+
+    @Test
+    fun tryReserve_does_not_limit_before_rate_limited() {
+        val limiter = createLimiter()
+
+        repeat(10) { assertThat(limiter.tryReserve(0), `is`(0L)) }
+        assertThat(limiter.throttleMillis(), `is`(0L))
+        assertThat(limiter.rate, nullValue())
+    }
+
+    @Test
+    fun tryReserve_after_rate_limited_limits_by_halved_rate() {
+        val limiter = createLimiter()
+        limiter.onRateLimited(retryAfterMillis = 0)
+        now += 2_000
+
+        assertThat(limiter.tryReserve(0), `is`(0L))
+        assertThat(limiter.tryReserve(0), `is`(0L))
+        assertThat(limiter.tryReserve(0), nullValue())
+        assertThat(limiter.tryReserve(1_000), `is`(1_000L))
+    }
+
+    @Test
+    fun onRateLimited_halves_rate_and_blocks() {
+        val limiter = createLimiter()
+
+        limiter.onRateLimited(retryAfterMillis = 3_000)
+
+        assertThat(limiter.rate, `is`(1.0))
+        assertThat(limiter.throttleMillis(), `is`(4_000L))
+        assertThat(limiter.tryReserve(1_000), nullValue())
+        now += 3_000
+        assertThat(limiter.tryReserve(1_000), `is`(1_000L))
+    }
+
+    @Test
+    fun onRateLimited_without_retry_after_blocks_one_interval() {
+        val limiter = createLimiter()
+
+        limiter.onRateLimited(retryAfterMillis = null)
+
+        assertThat(limiter.throttleMillis(), `is`(2_000L))
+    }
+
+    @Test
+    fun rate_decreases_to_min_and_recovers_additively() {
+        val limiter = createLimiter()
+
+        repeat(5) { limiter.onRateLimited(retryAfterMillis = 0) }
+        assertThat(limiter.rate, `is`(0.5))
+
+        limiter.onSuccess()
+        assertThat(limiter.rate, `is`(1.0))
+        limiter.onSuccess()
+        assertThat(limiter.rate, `is`(1.5))
+    }
+
+    @Test
+    fun limit_is_lifted_after_recovery() {
+        val limiter = createLimiter()
+        limiter.onRateLimited(retryAfterMillis = 0)
+
+        repeat(2) { limiter.onSuccess() }
+
+        assertThat(limiter.rate, nullValue())
+        repeat(10) { assertThat(limiter.tryReserve(0), `is`(0L)) }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.ClientInfo
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.containsString
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Locale
+
+@RunWith(AndroidJUnit4::class)
+class CustomHeaderInterceptorTest {
+
+    private val mockWebServer = MockWebServer()
+    private val clientInfo = ClientInfo.Builder().build()
+    private val interceptor = CustomHeaderInterceptor(Locale.JAPAN, clientInfo, TokenApiClientFactory.moshi)
+    private val client = OkHttpClient.Builder().addInterceptor(interceptor).build()
+
+    @Before
+    fun setUp() {
+        mockWebServer.start()
+    }
+
+    @After
+    fun tearDown() {
+        mockWebServer.shutdown()
+    }
+
+    private fun requestHeader(name: String): String? {
+        mockWebServer.enqueue(MockResponse().setResponseCode(200))
+        client.newCall(Request.Builder().url(mockWebServer.url("/")).build()).execute().close()
+        return mockWebServer.takeRequest().getHeader(name)
+    }
+
+    @Test
+    fun intercept_adds_headers() {
+        val expected = TokenApiClientFactory.moshi.adapter(ClientInfo::class.java).toJson(clientInfo)
+
+        assertThat(requestHeader("X-Payjp-Client-User-Agent"), `is`(expected))
+        assertThat(requestHeader("locale"), `is`("ja"))
+    }
+
+    @Test
+    fun applyClientInfoExtra_updates_header() {
+        interceptor.applyClientInfoExtra { setCardFormType("mv") }
+
+        assertThat(requestHeader("X-Payjp-Client-User-Agent"), containsString("\"card_form_type\":\"mv\""))
+
+        interceptor.applyClientInfoExtra { setPlugin("coroutine") }
+
+        val header = requestHeader("X-Payjp-Client-User-Agent")
+        assertThat(header, containsString("\"card_form_type\":\"mv\""))
+        assertThat(header, containsString("\"bindings_plugin\":\"coroutine\""))
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.PayjpApi
+import jp.pay.android.PayjpRetryPolicy
+import jp.pay.android.Task
+import jp.pay.android.exception.PayjpCardException
+import jp.pay.android.exception.PayjpRateLimitException
+import jp.pay.android.fixtures.ERROR_CARD_DECLINED
+import jp.pay.android.fixtures.ERROR_OVER_CAPACITY
+import jp.pay.android.fixtures.TOKEN_OK
+import jp.pay.android.model.ClientInfo
+import jp.pay.android.model.Token
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.greaterThanOrEqualTo
+import org.hamcrest.Matchers.instanceOf
+import org.junit.After
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.IOException
+import java.util.Locale
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+@RunWith(AndroidJUnit4::class)
+class RetryingTaskTest {
+
+    private val mockWebServer = MockWebServer()
+    private val callbackExecutor = Executor { it.run() }
+    private lateinit var scheduler: ScheduledExecutorService
+    private lateinit var api: PayjpApi
+
+    @Before
+    fun setUp() {
+        mockWebServer.start()
+        scheduler = Executors.newSingleThreadScheduledExecutor()
+        val baseUrl = mockWebServer.url("/").toString()
+        api = TokenApiClientFactory.createApiClient(
+            baseUrl = baseUrl,
+            okHttpClient = TokenApiClientFactory.createOkHttp(
+                baseUrl = baseUrl,
+                interceptor = TokenApiClientFactory.createHeaderInterceptor(
+                    locale = Locale.US,
+                    clientInfo = ClientInfo.Builder().build()
+                )
+            ),
+            callbackExecutor = callbackExecutor
+        )
+    }
+
+    @After
+    fun tearDown() {
+        scheduler.shutdownNow()
+        mockWebServer.shutdown()
+    }
+
+    private fun createTask(policy: PayjpRetryPolicy): Task<Token> = RetryingTask(
+        policy = policy,
+        scheduler = scheduler,
+        callbackExecutor = callbackExecutor,
+        clock = System::currentTimeMillis
+    ) { api.getToken("auth", "tok_123") }
+
+    @Test
+    fun run_retries_server_error() {
+        mockWebServer.enqueue(MockResponse().setResponseCode(503))
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+
+        val token = createTask(PayjpRetryPolicy(maxRetries = 2, initialBackoffMillis = 1)).run()
+
+        assertThat(token.id, `is`("tok_5ca06b51685e001723a2c3b4aeb4"))
+        assertThat(mockWebServer.requestCount, `is`(2))
+    }
+
+    @Test
+    fun run_gives_up_after_max_retries() {
+        repeat(3) { mockWebServer.enqueue(MockResponse().setResponseCode(503)) }
+
+        try {
+            createTask(PayjpRetryPolicy(maxRetries = 2, initialBackoffMillis = 1)).run()
+            fail()
+        } catch (e: IOException) {
+            assertThat(mockWebServer.requestCount, `is`(3))
+        }
+    }
+
+    @Test
+    fun run_does_not_retry_card_error() {
+        mockWebServer.enqueue(MockResponse().setResponseCode(402).setBody(ERROR_CARD_DECLINED))
+
+        try {
+            createTask(PayjpRetryPolicy(maxRetries = 2, initialBackoffMillis = 1)).run()
+            fail()
+        } catch (e: PayjpCardException) {
+            assertThat(mockWebServer.requestCount, `is`(1))
+        }
+    }
+
+    @Test
+    fun run_honors_retry_after() {
+        mockWebServer.enqueue(
+            MockResponse().setResponseCode(429).setHeader("Retry-After", "1").setBody(ERROR_OVER_CAPACITY)
+        )
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+
+        val start = System.currentTimeMillis()
+        createTask(PayjpRetryPolicy(maxRetries = 1, initialBackoffMillis = 1)).run()
+
+        assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(1000L))
+        assertThat(mockWebServer.requestCount, `is`(2))
+    }
+
+    @Test
+    fun run_does_not_retry_if_retry_after_exceeds_max_backoff() {
+        mockWebServer.enqueue(
+            MockResponse().setResponseCode(429).setHeader("Retry-After", "3600").setBody(ERROR_OVER_CAPACITY)
+        )
+
+        try {
+            createTask(PayjpRetryPolicy(maxRetries = 1, maxBackoffMillis = 8_000)).run()
+            fail()
+        } catch (e: PayjpRateLimitException) {
+            assertThat(e.retryAfterSeconds, `is`(3600L))
+            assertThat(mockWebServer.requestCount, `is`(1))
+        }
+    }
+
+    @Test
+    fun run_does_not_retry_beyond_deadline() {
+        mockWebServer.enqueue(
+            MockResponse().setResponseCode(429).setHeader("Retry-After", "10").setBody(ERROR_OVER_CAPACITY)
+        )
+
+        try {
+            createTask(PayjpRetryPolicy(maxRetries = 1, deadlineMillis = 1000)).run()
+            fail()
+        } catch (e: PayjpRateLimitException) {
+            assertThat(e.retryAfterSeconds, `is`(10L))
+            assertThat(mockWebServer.requestCount, `is`(1))
+        }
+    }
+
+    @Test
+    fun enqueue_retries_server_error() {
+        mockWebServer.enqueue(MockResponse().setResponseCode(503))
+        mockWebServer.enqueue(MockResponse().setResponseCode(200).setBody(TOKEN_OK))
+        val latch = CountDownLatch(1)
+        val result = AtomicReference<Token>()
+
+        createTask(PayjpRetryPolicy(maxRetries = 1, initialBackoffMillis = 1)).enqueue(
+            object : Task.Callback<Token> {
+                override fun onSuccess(data: Token) {
+                    result.set(data)
+                    latch.countDown()
+                }
+
+                override fun onError(throwable: Throwable) {
+                    latch.countDown()
+                }
+            }
+        )
+
+        assertThat(latch.await(5, TimeUnit.SECONDS), `is`(true))
+        assertThat(result.get().id, `is`("tok_5ca06b51685e001723a2c3b4aeb4"))
+        assertThat(mockWebServer.requestCount, `is`(2))
+    }
+
+    @Test
+    fun cancel_while_waiting_notifies_canceled() {
+        mockWebServer.enqueue(MockResponse().setResponseCode(503))
+        val failed = CountDownLatch(1)
+        val error = AtomicReference<Throwable>()
+        val task = createTask(PayjpRetryPolicy(maxRetries = 1, initialBackoffMillis = 5_000, jitter = 0.0))
+
+        task.enqueue(
+            object : Task.Callback<Token> {
+                override fun onSuccess(data: Token) {
+                    failed.countDown()
+                }
+
+                override fun onError(throwable: Throwable) {
+                    error.set(throwable)
+                    failed.countDown()
+                }
+            }
+        )
+        // wait for the first response
+        mockWebServer.takeRequest(5, TimeUnit.SECONDS)
+        task.cancel()
+
+        assertThat(failed.await(5, TimeUnit.SECONDS), `is`(true))
+        assertThat(error.get(), instanceOf(IOException::class.java))
+        assertThat(task.isCanceled(), `is`(true))
+        assertThat(mockWebServer.requestCount, `is`(1))
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.network
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.model.ClientInfo
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.not
+import org.hamcrest.Matchers.nullValue
+import org.hamcrest.Matchers.sameInstance
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Locale
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+@RunWith(AndroidJUnit4::class)
+class TokenApiClientFactoryTest {
+
+    private val interceptor = TokenApiClientFactory.createHeaderInterceptor(
+        locale = Locale.US,
+        clientInfo = ClientInfo.Builder().build()
+    )
+
+    @Test
+    fun createOkHttp_shares_resources_with_base_client() {
+        val baseClient = OkHttpClient()
+        val client = TokenApiClientFactory.createOkHttp(
+            baseUrl = "https://example.com",
+            interceptor = interceptor,
+            baseClient = baseClient
+        )
+
+        assertThat(client.connectionPool(), sameInstance(baseClient.connectionPool()))
+        assertThat(client.dispatcher(), sameInstance(baseClient.dispatcher()))
+    }
+
+    @Test
+    fun createOkHttp_does_not_share_interceptors_with_base_client() {
+        val interceptedCount = AtomicInteger()
+        val appInterceptor = Interceptor { chain ->
+            interceptedCount.incrementAndGet()
+            chain.proceed(chain.request())
+        }
+        val baseClient = OkHttpClient.Builder()
+            .addInterceptor(appInterceptor)
+            .addNetworkInterceptor(appInterceptor)
+            .build()
+        val client = TokenApiClientFactory.createOkHttp(
+            baseUrl = "https://example.com",
+            interceptor = interceptor,
+            baseClient = baseClient
+        )
+        val mockWebServer = MockWebServer()
+        mockWebServer.enqueue(MockResponse().setResponseCode(200))
+        mockWebServer.start()
+
+        client.newCall(Request.Builder().url(mockWebServer.url("/tokens")).build()).execute().close()
+        mockWebServer.shutdown()
+
+        assertThat(interceptedCount.get(), `is`(0))
+        assertThat(client.cache(), nullValue())
+    }
+
+    @Test
+    fun createOkHttp_uses_given_executor() {
+        val executor = Executors.newSingleThreadExecutor()
+        val client = TokenApiClientFactory.createOkHttp(
+            baseUrl = "https://example.com",
+            interceptor = interceptor,
+            executorService = executor
+        )
+
+        assertThat(client.dispatcher().executorService(), sameInstance(executor))
+        executor.shutdown()
+    }
+
+    @Test
+    fun release_shuts_down_only_owned_executor() {
+        val client = TokenApiClientFactory.createOkHttp(
+            baseUrl = "https://example.com",
+            interceptor = interceptor
+        )
+        val sharedExecutor = Executors.newSingleThreadExecutor()
+        val sharedClient = TokenApiClientFactory.createOkHttp(
+            baseUrl = "https://example.com",
+            interceptor = interceptor,
+            executorService = sharedExecutor
+        )
+
+        OkHttpClientResources(client, ownsExecutorService = true, ownsConnectionPool = true).release()
+        OkHttpClientResources(sharedClient, ownsExecutorService = false, ownsConnectionPool = true).release()
+
+        assertThat(client.dispatcher().executorService().isShutdown, `is`(true))
+        assertThat(sharedExecutor.isShutdown, not(true))
+        sharedExecutor.shutdown()
+    }
+}
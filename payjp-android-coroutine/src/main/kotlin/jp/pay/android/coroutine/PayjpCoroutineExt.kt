@@ -24,6 +24,7 @@
 
 package jp.pay.android.coroutine
 
+import jp.pay.android.PayjpTokenBatchResult
 import jp.pay.android.PayjpTokenParam
 import jp.pay.android.PayjpTokenService
 import jp.pay.android.Task
@@ -32,9 +33,9 @@ import jp.pay.android.model.TenantId
 import jp.pay.android.model.Token
 import jp.pay.android.model.TokenId
 import jp.pay.android.ui.widget.PayjpCardFormView
+import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlin.coroutines.resume
 import kotlin.coroutines.resumeWithException
-import kotlin.coroutines.suspendCoroutine
 
 /**
  * Create token by suspend function.
@@ -68,6 +69,19 @@ suspend fun PayjpTokenService.finishTokenTdsSuspend(tokenId: TokenId): Token =
  */
 suspend fun PayjpTokenService.getTokenSuspend(id: String): Token = getToken(id).toSuspend()
 
+/**
+ * Get tokens by suspend function.
+ *
+ * @param ids token ids
+ * @param parallelism max number of requests running at the same time.
+ * @return tokens and errors of each id
+ * @see [PayjpTokenService.getTokens]
+ */
+suspend fun PayjpTokenService.getTokensSuspend(
+    ids: Collection<String>,
+    parallelism: Int = PayjpTokenService.DEFAULT_GET_TOKENS_PARALLELISM
+): PayjpTokenBatchResult = getTokens(ids, parallelism).toSuspend()
+
 /**
  * Get accepted brands by suspend function.
  *
@@ -80,13 +94,23 @@ suspend fun PayjpTokenService.getAcceptedBrandsSuspend(tenantId: TenantId? = nul
 
 /**
  * coroutine extension for [Task].
+ * It does not block the thread while the task is running.
+ * If the coroutine is cancelled, the task is also cancelled.
  *
  * @return result of task
  */
-suspend fun <T> Task<T>.toSuspend(): T = suspendCoroutine { cont ->
-    try {
-        cont.resume(run())
-    } catch (e: Exception) {
-        cont.resumeWithException(e)
-    }
+suspend fun <T> Task<T>.toSuspend(): T = suspendCancellableCoroutine { cont ->
+    cont.invokeOnCancellation { cancel() }
+    enqueue(
+        object : Task.Callback<T> {
+            override fun onSuccess(data: T) {
+                cont.resume(data)
+            }
+
+            override fun onError(throwable: Throwable) {
+                // ignored if the coroutine has been already cancelled.
+                cont.resumeWithException(throwable)
+            }
+        }
+    )
 }
@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+@file:JvmName("PayjpCoroutineFlow")
+
+package jp.pay.android.coroutine
+
+import jp.pay.android.PayjpTokenOperationObserverService
+import jp.pay.android.PayjpTokenOperationObserverService.TokenRequestStatusListener
+import jp.pay.android.PayjpTokenOperationStatus
+import jp.pay.android.PayjpTokenParam
+import jp.pay.android.PayjpTokenService
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.Token
+import jp.pay.android.model.extension.retrieveId
+import jp.pay.android.ui.widget.PayjpCardFormAbstractFragment
+import jp.pay.android.ui.widget.PayjpCardFormView
+import jp.pay.android.ui.widget.PayjpCardFormView.OnValidateInputListener
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flow
+
+/**
+ * Observe [PayjpTokenOperationStatus] by flow.
+ * It emits the current status first, and then each change.
+ * The listener is removed when the collection is cancelled.
+ *
+ * @return flow of status
+ * @see [PayjpTokenOperationObserverService.addListener]
+ */
+fun PayjpTokenOperationObserverService.statusFlow(): Flow<PayjpTokenOperationStatus> = callbackFlow {
+    val listener = TokenRequestStatusListener { trySend(it) }
+    addListener(listener)
+    // add listener first not to miss the change just after reading status.
+    trySend(status)
+    awaitClose { removeListener(listener) }
+}.conflate().distinctUntilChanged()
+
+/**
+ * Observe [PayjpTokenOperationStatus] of the token service by flow.
+ *
+ * @return flow of status
+ * @see [PayjpTokenService.getTokenOperationObserver]
+ */
+fun PayjpTokenService.operationStatusFlow(): Flow<PayjpTokenOperationStatus> =
+    getTokenOperationObserver().statusFlow()
+
+/**
+ * Observe validation result of the card form by flow.
+ * It emits the current result first, and then each change.
+ * The card form must be a fragment created by `PayjpCardForm`.
+ *
+ * @return flow of validation result
+ * @see [PayjpCardFormView.OnValidateInputListener]
+ */
+fun PayjpCardFormView.validityFlow(): Flow<Boolean> {
+    val fragment = requireNotNull(this as? PayjpCardFormAbstractFragment) {
+        "validityFlow is only supported for the card form fragment."
+    }
+    return callbackFlow {
+        val listener = OnValidateInputListener { _, isValid -> trySend(isValid) }
+        fragment.addOnValidateInputListener(listener)
+        trySend(fragment.isValid)
+        awaitClose { fragment.removeOnValidateInputListener(listener) }
+    }.conflate().distinctUntilChanged()
+}
+
+/**
+ * Progress of [createTokenWithThreeDSecureFlow].
+ */
+sealed class ThreeDSecureTokenState {
+
+    /**
+     * Creating token.
+     */
+    object Creating : ThreeDSecureTokenState()
+
+    /**
+     * The token has been created and 3-D Secure verification is required.
+     *
+     * @param token token which is not verified yet.
+     */
+    data class VerificationRequired(val token: Token) : ThreeDSecureTokenState()
+
+    /**
+     * The verification has been done, and finishing 3-D Secure of the token.
+     *
+     * @param token token which is verified.
+     */
+    data class Finishing(val token: Token) : ThreeDSecureTokenState()
+
+    /**
+     * The token is ready to use.
+     *
+     * @param token token
+     */
+    data class Completed(val token: Token) : ThreeDSecureTokenState()
+
+    /**
+     * The verification has been canceled by user.
+     *
+     * @param token token which is not verified.
+     */
+    data class Canceled(val token: Token) : ThreeDSecureTokenState()
+}
+
+/**
+ * Create token with 3-D Secure and emit each step.
+ * If the card requires verification, [verify] is called to verify it (e.g. with `PayjpVerifier`).
+ * Errors of requests are thrown to the collector.
+ *
+ * @param param parameters for token. [PayjpTokenParam.threeDSecure] should be true.
+ * @param verify verify the token, and return true if it succeeded.
+ * @return flow of progress
+ * @see [PayjpTokenService.createToken]
+ * @see [PayjpTokenService.finishTokenThreeDSecure]
+ */
+fun PayjpTokenService.createTokenWithThreeDSecureFlow(
+    param: PayjpTokenParam,
+    verify: suspend (token: Token) -> Boolean
+): Flow<ThreeDSecureTokenState> = flow {
+    emit(ThreeDSecureTokenState.Creating)
+    val token = createTokenSuspend(param)
+    if (token.card.threeDSecureStatus != ThreeDSecureStatus.UNVERIFIED) {
+        emit(ThreeDSecureTokenState.Completed(token))
+        return@flow
+    }
+    emit(ThreeDSecureTokenState.VerificationRequired(token))
+    if (!verify(token)) {
+        emit(ThreeDSecureTokenState.Canceled(token))
+        return@flow
+    }
+    emit(ThreeDSecureTokenState.Finishing(token))
+    emit(ThreeDSecureTokenState.Completed(finishTokenTdsSuspend(token.retrieveId())))
+}
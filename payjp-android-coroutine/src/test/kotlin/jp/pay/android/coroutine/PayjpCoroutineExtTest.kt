@@ -25,15 +25,23 @@ package jp.pay.android.coroutine
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import jp.pay.android.PayjpTokenParam
 import jp.pay.android.PayjpTokenService
+import jp.pay.android.Task
 import jp.pay.android.TestStubs
 import jp.pay.android.anyNullable
 import jp.pay.android.model.CardBrand
 import jp.pay.android.model.CardBrandsAcceptedResponse
 import jp.pay.android.ui.widget.PayjpCardFormView
 import jp.pay.android.util.Tasks
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
 import org.hamcrest.MatcherAssert.assertThat
 import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.lessThan
 import org.junit.Assert.fail
 import org.junit.Before
 import org.junit.Test
@@ -42,6 +50,10 @@ import org.mockito.Mock
 import org.mockito.Mockito.`when`
 import org.mockito.Mockito.anyString
 import org.mockito.MockitoAnnotations
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 
 @RunWith(AndroidJUnit4::class)
 class PayjpCoroutineExtTest {
@@ -168,4 +180,63 @@ class PayjpCoroutineExtTest {
             assertThat(payjpToken.getAcceptedBrandsSuspend(null).brands, `is`(brands))
         }
     }
+
+    @Test
+    fun toSuspend_does_not_block_thread() {
+        val scheduler = Executors.newSingleThreadScheduledExecutor()
+        val dispatcher = Executors.newSingleThreadExecutor().asCoroutineDispatcher()
+        val count = 2000
+        val start = System.currentTimeMillis()
+        val results = runBlocking(dispatcher) {
+            (1..count).map { i ->
+                async { DelayedTask(scheduler, 100, i).toSuspend() }
+            }.awaitAll()
+        }
+
+        // 2000 * 100ms if each task parks the thread.
+        assertThat(System.currentTimeMillis() - start, lessThan(10_000L))
+        assertThat(results.size, `is`(count))
+        assertThat(results.last(), `is`(count))
+        dispatcher.close()
+        scheduler.shutdown()
+    }
+
+    @Test
+    fun toSuspend_cancels_task() {
+        val scheduler = Executors.newSingleThreadScheduledExecutor()
+        val task = DelayedTask(scheduler, 10_000, 1)
+        runBlocking {
+            val job = launch(Dispatchers.Unconfined) { task.toSuspend() }
+            job.cancelAndJoin()
+        }
+
+        assertThat(task.isCanceled(), `is`(true))
+        scheduler.shutdown()
+    }
+
+    private class DelayedTask<T>(
+        private val scheduler: ScheduledExecutorService,
+        private val delayMillis: Long,
+        private val result: T
+    ) : Task<T> {
+        @Volatile
+        private var future: ScheduledFuture<*>? = null
+
+        override fun run(): T {
+            Thread.sleep(delayMillis)
+            return result
+        }
+
+        override fun enqueue(callback: Task.Callback<T>) {
+            future = scheduler.schedule({ callback.onSuccess(result) }, delayMillis, TimeUnit.MILLISECONDS)
+        }
+
+        override fun isExecuted(): Boolean = future != null
+
+        override fun cancel() {
+            future?.cancel(false)
+        }
+
+        override fun isCanceled(): Boolean = future?.isCancelled == true
+    }
 }
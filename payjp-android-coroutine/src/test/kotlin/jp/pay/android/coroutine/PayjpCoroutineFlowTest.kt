@@ -0,0 +1,180 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.coroutine
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.PayjpTokenOperationObserverService
+import jp.pay.android.PayjpTokenOperationObserverService.TokenRequestStatusListener
+import jp.pay.android.PayjpTokenOperationStatus
+import jp.pay.android.PayjpTokenParam
+import jp.pay.android.PayjpTokenService
+import jp.pay.android.TestStubs
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.TokenId
+import jp.pay.android.util.Tasks
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.hamcrest.Matchers.`is`
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import java.util.concurrent.CopyOnWriteArrayList
+
+@RunWith(AndroidJUnit4::class)
+class PayjpCoroutineFlowTest {
+
+    private val params = PayjpTokenParam(
+        number = "4242424242424242",
+        expYear = "2030",
+        expMonth = "12",
+        cvc = "123",
+        name = null,
+        tenantId = null,
+        email = null,
+        phone = null,
+        threeDSecure = true,
+    )
+
+    private class FakeObserver : PayjpTokenOperationObserverService {
+        val listeners = CopyOnWriteArrayList<TokenRequestStatusListener>()
+
+        override var status: PayjpTokenOperationStatus = PayjpTokenOperationStatus.ACCEPTABLE
+            set(value) {
+                field = value
+                listeners.forEach { it.onChangedStatus(value) }
+            }
+
+        override fun addListener(listener: TokenRequestStatusListener) {
+            listeners.add(listener)
+        }
+
+        override fun removeListener(listener: TokenRequestStatusListener) {
+            listeners.remove(listener)
+        }
+
+        override fun removeAllListeners() {
+            listeners.clear()
+        }
+    }
+
+    @Test
+    fun statusFlow_emits_current_and_changes() = runBlocking {
+        val observer = FakeObserver()
+        val job = launch(Dispatchers.Unconfined) {
+            val statuses = observer.statusFlow().take(3).toList()
+            assertThat(
+                statuses,
+                contains(
+                    PayjpTokenOperationStatus.ACCEPTABLE,
+                    PayjpTokenOperationStatus.RUNNING,
+                    PayjpTokenOperationStatus.THROTTLED
+                )
+            )
+        }
+        observer.status = PayjpTokenOperationStatus.RUNNING
+        yield()
+        observer.status = PayjpTokenOperationStatus.THROTTLED
+        job.join()
+
+        assertThat(observer.listeners, empty())
+    }
+
+    @Test
+    fun operationStatusFlow_emits_current_status() = runBlocking {
+        val observer = FakeObserver()
+        observer.status = PayjpTokenOperationStatus.THROTTLED
+        val tokenService = mock(PayjpTokenService::class.java)
+        `when`(tokenService.getTokenOperationObserver()).thenReturn(observer)
+
+        assertThat(tokenService.operationStatusFlow().first(), `is`(PayjpTokenOperationStatus.THROTTLED))
+    }
+
+    @Test
+    fun createTokenWithThreeDSecureFlow_without_verification() = runBlocking {
+        val token = TestStubs.newToken(card = TestStubs.newCard(threeDSecureStatus = ThreeDSecureStatus.VERIFIED))
+        val tokenService = mock(PayjpTokenService::class.java)
+        `when`(tokenService.createToken(params)).thenReturn(Tasks.success(token))
+
+        val states = tokenService.createTokenWithThreeDSecureFlow(params) { true }.toList()
+
+        assertThat(
+            states,
+            contains(ThreeDSecureTokenState.Creating, ThreeDSecureTokenState.Completed(token))
+        )
+    }
+
+    @Test
+    fun createTokenWithThreeDSecureFlow_with_verification() = runBlocking {
+        val unverified = TestStubs.newToken(
+            card = TestStubs.newCard(threeDSecureStatus = ThreeDSecureStatus.UNVERIFIED)
+        )
+        val verified = TestStubs.newToken(card = TestStubs.newCard(threeDSecureStatus = ThreeDSecureStatus.VERIFIED))
+        val tokenService = mock(PayjpTokenService::class.java)
+        `when`(tokenService.createToken(params)).thenReturn(Tasks.success(unverified))
+        `when`(tokenService.finishTokenThreeDSecure(TokenId(unverified.id))).thenReturn(Tasks.success(verified))
+
+        val states = tokenService.createTokenWithThreeDSecureFlow(params) { true }.toList()
+
+        assertThat(
+            states,
+            contains(
+                ThreeDSecureTokenState.Creating,
+                ThreeDSecureTokenState.VerificationRequired(unverified),
+                ThreeDSecureTokenState.Finishing(unverified),
+                ThreeDSecureTokenState.Completed(verified)
+            )
+        )
+    }
+
+    @Test
+    fun createTokenWithThreeDSecureFlow_canceled() = runBlocking<Unit> {
+        val unverified = TestStubs.newToken(
+            card = TestStubs.newCard(threeDSecureStatus = ThreeDSecureStatus.UNVERIFIED)
+        )
+        val tokenService = mock(PayjpTokenService::class.java)
+        `when`(tokenService.createToken(params)).thenReturn(Tasks.success(unverified))
+
+        val states = tokenService.createTokenWithThreeDSecureFlow(params) { false }.toList()
+
+        assertThat(
+            states,
+            contains(
+                ThreeDSecureTokenState.Creating,
+                ThreeDSecureTokenState.VerificationRequired(unverified),
+                ThreeDSecureTokenState.Canceled(unverified)
+            )
+        )
+        verify(tokenService, never()).finishTokenThreeDSecure(TokenId(unverified.id))
+    }
+}
@@ -22,6 +22,7 @@
  */
 package jp.pay.android
 
+import jp.pay.android.model.TenantId
 import jp.pay.android.verifier.PayjpVerifier
 
 /**
@@ -45,11 +46,16 @@ object Payjp {
 
     /**
      * Initialize with configuration.
+     * If it has been initialized, the previous [PayjpTokenService] is shut down.
+     * Do not keep the previous instance, e.g. in an open card form, across re-initialization;
+     * its new requests fail with [IllegalStateException].
      *
      * @param configuration configuration for [Payjp]
      */
     @JvmStatic
     fun init(configuration: PayjpConfiguration): Payjp {
+        // release threads and connections of the previous instance.
+        this.tokenService?.shutdown()
         this.configuration = configuration
         val logger = PayjpLogger.get(configuration.debugEnabled)
         val payjpToken = PayjpToken(configuration.tokenConfiguration())
@@ -65,7 +71,8 @@ object Payjp {
         PayjpVerifier.configure(
             logger = logger,
             tokenService = payjpToken,
-            threeDSecureRedirectName = configuration.threeDSecureRedirectName
+            threeDSecureRedirectName = configuration.threeDSecureRedirectName,
+            callbackExecutor = configuration.callbackExecutor
         )
         return this
     }
@@ -80,6 +87,20 @@ object Payjp {
         "You must call Payjp.init(publicKey)"
     }
 
+    /**
+     * Establish a connection to PAY.JP in background before opening the card form.
+     * You must call `Payjp.init(configuration)` first.
+     *
+     * @param fetchAcceptedBrands if true, also fetch accepted brands (and cache them).
+     * @param tenantId tenant id for accepted brands (only for platform).
+     * @see [PayjpTokenService.prewarm]
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun prewarm(fetchAcceptedBrands: Boolean = false, tenantId: TenantId? = null) {
+        token().prewarm(fetchAcceptedBrands = fetchAcceptedBrands, tenantId = tenantId)
+    }
+
     /**
      * Return [PayjpCardForm] instance.
      * You must call `Payjp.init(configuration)` first.
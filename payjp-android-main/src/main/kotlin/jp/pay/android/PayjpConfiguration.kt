@@ -25,8 +25,12 @@ package jp.pay.android
 import jp.pay.android.model.ClientInfo
 import jp.pay.android.plugin.CardScannerPlugin
 import jp.pay.android.util.MainThreadExecutor
+import okhttp3.OkHttpClient
+import java.io.File
 import java.util.Locale
 import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.TimeUnit
 
 /**
  * Configuration for Payjp
@@ -40,6 +44,21 @@ import java.util.concurrent.Executor
  * @param cardScannerPlugin optional scanner plugin.
  * @param tokenBackgroundHandler handler for send token to app's server
  * @param threeDSecureRedirectName 3DS redirect name registered on PAY.JP dashboard.
+ * @param acceptedBrandsCacheTtlMillis time to cache accepted brands.
+ * @param acceptedBrandsStaleWhileRevalidateMillis time to use the expired accepted brands while revalidating.
+ * @param acceptedBrandsCacheDirectory directory to save accepted brands.
+ * @param acceptedBrandsDiskCacheMaxAgeMillis max age of the accepted brands saved in [acceptedBrandsCacheDirectory].
+ * @param okHttpClient client of the app to share the connection pool and the dispatcher.
+ * @param networkExecutor executor to run requests.
+ * @param retryPolicies retry policy for each idempotent endpoint.
+ * @param connectTimeoutMillis connect timeout of each request.
+ * @param readTimeoutMillis read and write timeout of each request.
+ * @param tokenCacheMaxSize max number of tokens to cache.
+ * @param tokenCacheTtlMillis time to cache tokens.
+ * @param rateLimitEnabled whether token requests are limited after a rate limit error.
+ * @param rateLimitPermitsPerSecond max rate of token requests while limited.
+ * @param rateLimitBurst max number of token requests sent at once while limited.
+ * @param rateLimitMaxWaitMillis max time for a token request to wait while limited.
  */
 class PayjpConfiguration private constructor(
     val publicKey: String,
@@ -49,7 +68,22 @@ class PayjpConfiguration private constructor(
     val clientInfo: ClientInfo,
     val cardScannerPlugin: CardScannerPlugin?,
     val tokenBackgroundHandler: PayjpTokenBackgroundHandler?,
-    val threeDSecureRedirectName: String?
+    val threeDSecureRedirectName: String?,
+    val acceptedBrandsCacheTtlMillis: Long,
+    val acceptedBrandsStaleWhileRevalidateMillis: Long,
+    val acceptedBrandsCacheDirectory: File?,
+    val acceptedBrandsDiskCacheMaxAgeMillis: Long,
+    val okHttpClient: OkHttpClient?,
+    val networkExecutor: ExecutorService?,
+    val retryPolicies: Map<PayjpRetryPolicy.Endpoint, PayjpRetryPolicy>,
+    val connectTimeoutMillis: Long?,
+    val readTimeoutMillis: Long?,
+    val tokenCacheMaxSize: Int,
+    val tokenCacheTtlMillis: Long,
+    val rateLimitEnabled: Boolean,
+    val rateLimitPermitsPerSecond: Double,
+    val rateLimitBurst: Int,
+    val rateLimitMaxWaitMillis: Long
 ) {
 
     fun tokenConfiguration(): PayjpTokenConfiguration = PayjpTokenConfiguration(
@@ -57,7 +91,22 @@ class PayjpConfiguration private constructor(
         debugEnabled = debugEnabled,
         locale = locale,
         callbackExecutor = callbackExecutor,
-        clientInfo = clientInfo
+        clientInfo = clientInfo,
+        acceptedBrandsCacheTtlMillis = acceptedBrandsCacheTtlMillis,
+        acceptedBrandsStaleWhileRevalidateMillis = acceptedBrandsStaleWhileRevalidateMillis,
+        acceptedBrandsCacheDirectory = acceptedBrandsCacheDirectory,
+        okHttpClient = okHttpClient,
+        networkExecutor = networkExecutor,
+        retryPolicies = retryPolicies,
+        connectTimeoutMillis = connectTimeoutMillis,
+        readTimeoutMillis = readTimeoutMillis,
+        tokenCacheMaxSize = tokenCacheMaxSize,
+        tokenCacheTtlMillis = tokenCacheTtlMillis,
+        rateLimitEnabled = rateLimitEnabled,
+        rateLimitPermitsPerSecond = rateLimitPermitsPerSecond,
+        rateLimitBurst = rateLimitBurst,
+        rateLimitMaxWaitMillis = rateLimitMaxWaitMillis,
+        acceptedBrandsDiskCacheMaxAgeMillis = acceptedBrandsDiskCacheMaxAgeMillis
     )
 
     /**
@@ -85,6 +134,39 @@ class PayjpConfiguration private constructor(
 
         private var threeDSecureRedirectName: String? = null
 
+        private var acceptedBrandsCacheTtlMillis: Long =
+            PayjpTokenConfiguration.DEFAULT_ACCEPTED_BRANDS_CACHE_TTL_MILLIS
+
+        private var acceptedBrandsStaleWhileRevalidateMillis: Long =
+            PayjpTokenConfiguration.DEFAULT_ACCEPTED_BRANDS_STALE_WHILE_REVALIDATE_MILLIS
+
+        private var acceptedBrandsCacheDirectory: File? = null
+
+        private var acceptedBrandsDiskCacheMaxAgeMillis: Long =
+            PayjpTokenConfiguration.DEFAULT_ACCEPTED_BRANDS_DISK_CACHE_MAX_AGE_MILLIS
+
+        private var okHttpClient: OkHttpClient? = null
+
+        private var networkExecutor: ExecutorService? = null
+
+        private val retryPolicies = mutableMapOf<PayjpRetryPolicy.Endpoint, PayjpRetryPolicy>()
+
+        private var connectTimeoutMillis: Long? = null
+
+        private var readTimeoutMillis: Long? = null
+
+        private var tokenCacheMaxSize: Int = PayjpTokenConfiguration.DEFAULT_TOKEN_CACHE_MAX_SIZE
+
+        private var tokenCacheTtlMillis: Long = PayjpTokenConfiguration.DEFAULT_TOKEN_CACHE_TTL_MILLIS
+
+        private var rateLimitEnabled: Boolean = true
+
+        private var rateLimitPermitsPerSecond: Double = PayjpTokenConfiguration.DEFAULT_RATE_LIMIT_PERMITS_PER_SECOND
+
+        private var rateLimitBurst: Int = PayjpTokenConfiguration.DEFAULT_RATE_LIMIT_BURST
+
+        private var rateLimitMaxWaitMillis: Long = PayjpTokenConfiguration.DEFAULT_RATE_LIMIT_MAX_WAIT_MILLIS
+
         /**
          * set debugEnabled
          *
@@ -129,6 +211,154 @@ class PayjpConfiguration private constructor(
             this.threeDSecureRedirectName = name
         }
 
+        /**
+         * set cache policy of accepted brands.
+         * Within [ttl] the cached brands are used without request.
+         * After that, within [staleWhileRevalidate] the cached brands are still used
+         * while fetching new ones in background.
+         * The default is 5 minutes ttl and 1 hour stale-while-revalidate.
+         *
+         * @param ttl time to cache. `0` disables the cache.
+         * @param staleWhileRevalidate time to use the expired brands while revalidating.
+         * `0` always waits for the new brands after [ttl].
+         * @param unit time unit of [ttl] and [staleWhileRevalidate]
+         */
+        @JvmOverloads
+        fun setAcceptedBrandsCache(
+            ttl: Long,
+            staleWhileRevalidate: Long,
+            unit: TimeUnit = TimeUnit.MILLISECONDS
+        ) = apply {
+            this.acceptedBrandsCacheTtlMillis = unit.toMillis(ttl)
+            this.acceptedBrandsStaleWhileRevalidateMillis = unit.toMillis(staleWhileRevalidate)
+        }
+
+        /**
+         * set directory to save accepted brands (e.g. `Context.getCacheDir()`).
+         * The last known brands are loaded in background on [Payjp.init],
+         * so that the card form can be shown immediately on cold start.
+         * They are always revalidated after being used.
+         * The brands saved longer ago than [maxAge] are dropped instead of being used.
+         * It does nothing if the ttl of [setAcceptedBrandsCache] is `0`.
+         * The default is `null` (disabled) and 7 days max age.
+         *
+         * @param directory directory, or `null` to disable.
+         * @param maxAge max age of the saved brands.
+         * @param unit time unit of [maxAge]
+         */
+        @JvmOverloads
+        fun setAcceptedBrandsDiskCache(
+            directory: File?,
+            maxAge: Long = PayjpTokenConfiguration.DEFAULT_ACCEPTED_BRANDS_DISK_CACHE_MAX_AGE_MILLIS,
+            unit: TimeUnit = TimeUnit.MILLISECONDS
+        ) = apply {
+            this.acceptedBrandsCacheDirectory = directory
+            this.acceptedBrandsDiskCacheMaxAgeMillis = unit.toMillis(maxAge)
+        }
+
+        /**
+         * set OkHttpClient of the app.
+         * The SDK derives its own client by [OkHttpClient.newBuilder],
+         * so the connection pool and the dispatcher are shared with the app.
+         * The default is `null` (the SDK creates its own client).
+         *
+         * @param client client
+         */
+        fun setOkHttpClient(client: OkHttpClient?) = apply {
+            this.okHttpClient = client
+        }
+
+        /**
+         * set executor to run requests.
+         * If it is set, it is used instead of the dispatcher of the client.
+         * The SDK never shuts it down.
+         *
+         * @param executor executor
+         */
+        fun setNetworkExecutor(executor: ExecutorService?) = apply {
+            this.networkExecutor = executor
+        }
+
+        /**
+         * set retry policy of idempotent endpoint.
+         * The default is [PayjpRetryPolicy.NONE] for all endpoints.
+         *
+         * @param endpoint endpoint
+         * @param policy policy
+         */
+        fun setRetryPolicy(endpoint: PayjpRetryPolicy.Endpoint, policy: PayjpRetryPolicy) = apply {
+            this.retryPolicies[endpoint] = policy
+        }
+
+        /**
+         * set timeouts of each request.
+         * If [PayjpRetryPolicy.deadlineMillis] is set, it limits the whole request including retries.
+         * The default is the same as OkHttp (10 seconds).
+         *
+         * @param connect connect timeout.
+         * @param read read and write timeout.
+         * @param unit time unit
+         */
+        @JvmOverloads
+        fun setTimeouts(connect: Long, read: Long, unit: TimeUnit = TimeUnit.MILLISECONDS) = apply {
+            this.connectTimeoutMillis = unit.toMillis(connect)
+            this.readTimeoutMillis = unit.toMillis(read)
+        }
+
+        /**
+         * set cache policy of tokens.
+         * The tokens from createToken, finishTokenThreeDSecure and getToken are cached,
+         * and getToken returns them without request within [ttl].
+         * Note that the cached token can be as old as [ttl], e.g. `used` may have changed since then.
+         * The default is disabled.
+         *
+         * @param maxSize max number of tokens. `0` disables the cache.
+         * @param ttl time to cache.
+         * @param unit time unit
+         */
+        @JvmOverloads
+        fun setTokenCache(maxSize: Int, ttl: Long, unit: TimeUnit = TimeUnit.MILLISECONDS) = apply {
+            this.tokenCacheMaxSize = maxSize
+            this.tokenCacheTtlMillis = unit.toMillis(ttl)
+        }
+
+        /**
+         * set whether to limit createToken and finishTokenThreeDSecure after a rate limit error.
+         * Requests are not limited until the server returns a rate limit error,
+         * and the limit is lifted when the rate recovers.
+         * The default is enabled.
+         *
+         * @param enabled if false, requests are never limited by the SDK.
+         */
+        fun setRateLimitEnabled(enabled: Boolean) = apply {
+            this.rateLimitEnabled = enabled
+        }
+
+        /**
+         * set rate limit of createToken and finishTokenThreeDSecure.
+         * After a rate limit error, the rate starts from half of [permitsPerSecond],
+         * halves on each rate limit error and increases on each success up to [permitsPerSecond].
+         * A request which would wait longer than [maxWait] fails with
+         * [jp.pay.android.exception.PayjpThrottledException].
+         * The default is 2 requests per second, burst 3 and 5 seconds max wait.
+         *
+         * @param permitsPerSecond max rate while limited.
+         * @param burst max number of requests sent at once while limited.
+         * @param maxWait max time to wait.
+         * @param unit time unit of [maxWait]
+         */
+        @JvmOverloads
+        fun setRateLimit(
+            permitsPerSecond: Double,
+            burst: Int,
+            maxWait: Long,
+            unit: TimeUnit = TimeUnit.MILLISECONDS
+        ) = apply {
+            this.rateLimitPermitsPerSecond = permitsPerSecond
+            this.rateLimitBurst = burst
+            this.rateLimitMaxWaitMillis = unit.toMillis(maxWait)
+        }
+
         /**
          * Build configuration.
          *
@@ -142,7 +372,22 @@ class PayjpConfiguration private constructor(
             clientInfo = clientInfo,
             cardScannerPlugin = cardScannerPlugin,
             tokenBackgroundHandler = tokenBackgroundHandler,
-            threeDSecureRedirectName = threeDSecureRedirectName
+            threeDSecureRedirectName = threeDSecureRedirectName,
+            acceptedBrandsCacheTtlMillis = acceptedBrandsCacheTtlMillis,
+            acceptedBrandsStaleWhileRevalidateMillis = acceptedBrandsStaleWhileRevalidateMillis,
+            acceptedBrandsCacheDirectory = acceptedBrandsCacheDirectory,
+            acceptedBrandsDiskCacheMaxAgeMillis = acceptedBrandsDiskCacheMaxAgeMillis,
+            okHttpClient = okHttpClient,
+            networkExecutor = networkExecutor,
+            retryPolicies = retryPolicies.toMap(),
+            connectTimeoutMillis = connectTimeoutMillis,
+            readTimeoutMillis = readTimeoutMillis,
+            tokenCacheMaxSize = tokenCacheMaxSize,
+            tokenCacheTtlMillis = tokenCacheTtlMillis,
+            rateLimitEnabled = rateLimitEnabled,
+            rateLimitPermitsPerSecond = rateLimitPermitsPerSecond,
+            rateLimitBurst = rateLimitBurst,
+            rateLimitMaxWaitMillis = rateLimitMaxWaitMillis
         )
     }
 }
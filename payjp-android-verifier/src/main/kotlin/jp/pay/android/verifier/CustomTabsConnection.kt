@@ -0,0 +1,152 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier
+
+import android.content.ComponentName
+import android.content.Context
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import androidx.annotation.MainThread
+import androidx.browser.customtabs.CustomTabsCallback
+import androidx.browser.customtabs.CustomTabsClient
+import androidx.browser.customtabs.CustomTabsServiceConnection
+import androidx.browser.customtabs.CustomTabsSession
+import jp.pay.android.PayjpLogger
+import jp.pay.android.verifier.util.CustomTabsHelper
+import java.util.concurrent.Executor
+
+/**
+ * Connection to the Custom Tabs service.
+ * It warms up the browser and lets it pre-connect to the page which will be launched.
+ * The binding keeps the browser process at a higher priority, so [unbind] it when it is no longer needed.
+ *
+ * @param resolveExecutor executor to resolve the browser package, which queries PackageManager.
+ */
+internal class CustomTabsConnection(
+    private val logger: () -> PayjpLogger,
+    private val resolveExecutor: Executor,
+    private val callback: CustomTabsCallback,
+) {
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private var connection: CustomTabsServiceConnection? = null
+    private var boundContext: Context? = null
+    private var resolving = false
+    // incremented by unbind() to ignore the package resolved before it.
+    private var bindGeneration = 0
+    private var pendingUri: Uri? = null
+
+    /**
+     * Session to launch Custom Tabs with, or null if the service is not connected yet.
+     */
+    var session: CustomTabsSession? = null
+        private set
+
+    /**
+     * Resolve the browser package in background, then bind to its Custom Tabs service.
+     */
+    @MainThread
+    fun bind(context: Context) {
+        if (connection != null || resolving) {
+            return
+        }
+        resolving = true
+        val generation = bindGeneration
+        val applicationContext = context.applicationContext
+        resolveExecutor.execute {
+            val packageName = CustomTabsHelper.getPackageNameToUse(applicationContext)
+            mainHandler.post {
+                if (generation != bindGeneration) {
+                    return@post
+                }
+                resolving = false
+                if (packageName != null && connection == null) {
+                    bindService(applicationContext, packageName)
+                }
+            }
+        }
+    }
+
+    @MainThread
+    private fun bindService(context: Context, packageName: String) {
+        val connection = object : CustomTabsServiceConnection() {
+            override fun onCustomTabsServiceConnected(name: ComponentName, client: CustomTabsClient) {
+                client.warmup(0L)
+                session = client.newSession(callback)?.also { session ->
+                    pendingUri?.let { session.mayLaunchUrl(it, null, null) }
+                }
+                pendingUri = null
+                logger().d("Custom Tabs service connected: $name")
+            }
+
+            override fun onServiceDisconnected(name: ComponentName?) {
+                // release the old binding so that the next bind() starts a new one.
+                unbind()
+            }
+        }
+        val bound = try {
+            CustomTabsClient.bindCustomTabsService(context, packageName, connection)
+        } catch (e: SecurityException) {
+            logger().w("Unable to bind Custom Tabs service. ${e.message}")
+            false
+        }
+        if (bound) {
+            this.connection = connection
+            this.boundContext = context
+        }
+    }
+
+    /**
+     * Release the connection made by [bind], or cancel it if the package is still being resolved.
+     */
+    @MainThread
+    fun unbind() {
+        bindGeneration++
+        resolving = false
+        pendingUri = null
+        val connection = connection ?: return
+        try {
+            boundContext?.unbindService(connection)
+        } catch (e: IllegalArgumentException) {
+            logger().w("Unable to unbind Custom Tabs service. ${e.message}")
+        }
+        this.connection = null
+        boundContext = null
+        session = null
+    }
+
+    /**
+     * Tell the browser that [uri] is likely to be launched.
+     * If the service is not connected yet, it is told when connected.
+     */
+    @MainThread
+    fun mayLaunchUrl(context: Context, uri: Uri) {
+        bind(context)
+        val session = session
+        if (session == null) {
+            pendingUri = uri
+        } else {
+            session.mayLaunchUrl(uri, null, null)
+        }
+    }
+}
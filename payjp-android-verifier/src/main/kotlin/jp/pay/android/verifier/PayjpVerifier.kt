@@ -23,7 +23,12 @@
 package jp.pay.android.verifier
 
 import android.app.Activity
+import android.content.Context
+import android.net.Uri
+import android.os.Bundle
 import androidx.annotation.MainThread
+import androidx.browser.customtabs.CustomTabsCallback
+import androidx.browser.customtabs.CustomTabsSession
 import jp.pay.android.PayjpLogger
 import jp.pay.android.PayjpTokenService
 import jp.pay.android.Task
@@ -31,29 +36,67 @@ import jp.pay.android.model.Token
 import jp.pay.android.model.TokenId
 import jp.pay.android.verifier.threeDSecure.getVerificationEntryUri
 import jp.pay.android.verifier.threeDSecure.getVerificationFinishUri
+import jp.pay.android.verifier.ui.PayjpThreeDSecureCompletion
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetrics
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetricsListener
 import jp.pay.android.verifier.ui.PayjpThreeDSecureResult
 import jp.pay.android.verifier.ui.PayjpThreeDSecureResultCallback
 import jp.pay.android.verifier.ui.PayjpThreeDSecureStepActivity
+import jp.pay.android.verifier.ui.PayjpWebActivity
+import jp.pay.android.verifier.ui.VerifierWebViewPool
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
 
 object PayjpVerifier {
     private const val REQUEST_CODE_VERIFY_LAUNCHER = 10
     private const val REQUEST_CODE_VERIFY = 11
+
+    /**
+     * Default time limit of [awaitThreeDSecureCompletion].
+     */
+    const val DEFAULT_THREE_D_SECURE_COMPLETION_DEADLINE_MILLIS = 30_000L
     private var logger: PayjpLogger = PayjpLogger.None
     private var tokenService: PayjpTokenService? = null
     private var threeDSecureRedirectName: String? = null
+    private var callbackExecutor: Executor? = null
+    // both query PackageManager, so share one background thread.
+    private val browserExecutor: Executor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "payjp-web-browser-resolver").apply { isDaemon = true }
+    }
     private val webBrowserResolver = WebBrowserResolver(
         WebBrowser.ChromeTab,
-        WebBrowser.InAppWeb
+        WebBrowser.InAppWeb,
+        executor = browserExecutor
+    )
+    private val metricsRecorder = ThreeDSecureMetricsRecorder()
+    private val completionScheduler: ScheduledExecutorService by lazy {
+        Executors.newSingleThreadScheduledExecutor { runnable ->
+            Thread(runnable, "payjp-3ds-completion").apply { isDaemon = true }
+        }
+    }
+    private val customTabsConnection = CustomTabsConnection(
+        logger = { logger },
+        resolveExecutor = browserExecutor,
+        callback = object : CustomTabsCallback() {
+            override fun onNavigationEvent(navigationEvent: Int, extras: Bundle?) {
+                if (navigationEvent == NAVIGATION_FINISHED) {
+                    onFirstPaint(PayjpThreeDSecureMetrics.Browser.CUSTOM_TABS)
+                }
+            }
+        }
     )
 
     fun configure(
         logger: PayjpLogger,
         tokenService: PayjpTokenService,
-        threeDSecureRedirectName: String?
+        threeDSecureRedirectName: String?,
+        callbackExecutor: Executor
     ) {
         this.logger = logger
         this.tokenService = tokenService
         this.threeDSecureRedirectName = threeDSecureRedirectName
+        this.callbackExecutor = callbackExecutor
     }
 
     internal fun logger(): PayjpLogger = logger
@@ -62,6 +105,88 @@ object PayjpVerifier {
         "You must initialize Payjp first"
     }
 
+    internal fun customTabsSession(): CustomTabsSession? = customTabsConnection.session
+
+    private fun verificationEntryUri(resourceId: String): Uri = getVerificationEntryUri(
+        resourceId = resourceId,
+        publicKey = tokenService().getPublicKey(),
+        redirectUrlName = threeDSecureRedirectName
+    )
+
+    /**
+     * Connect to the browser and warm it up before starting 3DS authorization flow.
+     * It also resolves the browser to use in background.
+     * Call it when 3DS verification is likely, e.g. when the card form is opened with 3DS enabled.
+     *
+     * @param context context
+     */
+    @MainThread
+    fun warmUp(context: Context) {
+        webBrowserResolver.prefetch(context)
+        customTabsConnection.bind(context)
+    }
+
+    /**
+     * Release the browser connection made by [warmUp] or [prepareThreeDSecure].
+     * Call it when 3DS verification is no longer likely, e.g. when the card form is closed.
+     * The 3DS flow started by [startThreeDSecureFlow] calls it when it finishes.
+     */
+    @MainThread
+    fun releaseWarmUp() {
+        customTabsConnection.unbind()
+    }
+
+    /**
+     * Let the browser pre-connect to the 3DS page of the resource.
+     * Call it as soon as you get a token whose 3DS status is unverified.
+     * [startThreeDSecureFlow] also calls it.
+     *
+     * @param resourceId id of the resource (token/charge/customer) that needs 3DS verification
+     * @param context context
+     */
+    @MainThread
+    fun prepareThreeDSecure(resourceId: String, context: Context) {
+        customTabsConnection.mayLaunchUrl(context, verificationEntryUri(resourceId))
+    }
+
+    /**
+     * Keep a WebView ready for in-app 3DS verification.
+     * It loads the WebView provider in background and creates a WebView when the main thread is idle,
+     * so the verification page opens faster when Custom Tabs is not available.
+     * Call it after `Payjp.init`.
+     *
+     * @param context context
+     */
+    @MainThread
+    fun enableWebViewPool(context: Context) {
+        VerifierWebViewPool.enable(context)
+    }
+
+    /**
+     * Stop keeping a WebView enabled by [enableWebViewPool].
+     */
+    @MainThread
+    fun disableWebViewPool() {
+        VerifierWebViewPool.disable()
+    }
+
+    /**
+     * Set listener to receive metrics of the 3DS step, e.g. time to load the verification page.
+     *
+     * @param listener listener, or null to remove.
+     */
+    @MainThread
+    fun setThreeDSecureMetricsListener(listener: PayjpThreeDSecureMetricsListener?) {
+        metricsRecorder.listener = listener
+    }
+
+    @MainThread
+    internal fun onFirstPaint(browser: PayjpThreeDSecureMetrics.Browser) {
+        metricsRecorder.onFirstPaint(browser)?.let {
+            logger.d("3DS first paint ${it.browser} ${it.timeToFirstPaintMillis}ms")
+        }
+    }
+
     /**
      * Start 3DS authorization flow with a resource ID.
      *
@@ -70,6 +195,8 @@ object PayjpVerifier {
      */
     @MainThread
     fun startThreeDSecureFlow(resourceId: String, activity: Activity) {
+        webBrowserResolver.prefetch(activity)
+        prepareThreeDSecure(resourceId, activity)
         val intent = PayjpThreeDSecureStepActivity.createLaunchIntent(activity, resourceId)
         activity.startActivityForResult(intent, REQUEST_CODE_VERIFY_LAUNCHER)
     }
@@ -91,11 +218,7 @@ object PayjpVerifier {
     internal fun openThreeDSecure(resourceId: String, activity: Activity) {
         val intent = webBrowserResolver.resolve(
             context = activity,
-            uri = getVerificationEntryUri(
-                resourceId = resourceId,
-                publicKey = tokenService().getPublicKey(),
-                redirectUrlName = threeDSecureRedirectName
-            ),
+            uri = verificationEntryUri(resourceId),
             callbackUri = getVerificationFinishUri(resourceId)
         )
         if (intent == null) {
@@ -103,6 +226,13 @@ object PayjpVerifier {
         } else {
             logger.d("Intent $intent")
             logger.d("data ${intent.data}")
+            metricsRecorder.onLaunched(
+                if (intent.component?.className == PayjpWebActivity::class.java.name) {
+                    PayjpThreeDSecureMetrics.Browser.IN_APP_WEB
+                } else {
+                    PayjpThreeDSecureMetrics.Browser.CUSTOM_TABS
+                }
+            )
             activity.startActivityForResult(intent, REQUEST_CODE_VERIFY)
         }
     }
@@ -120,4 +250,32 @@ object PayjpVerifier {
         is PayjpThreeDSecureResult.SuccessResourceId -> tokenService().finishTokenThreeDSecure(result.retrieveTokenId())
         else -> null
     }
+
+    /**
+     * Wait until 3DS status of the token is settled, i.e. no longer [jp.pay.android.model.ThreeDSecureStatus.UNVERIFIED].
+     * It gets the token repeatedly with exponential backoff (0.5s, 1s, 2s, then every 4s),
+     * and returns the latest token with [PayjpThreeDSecureCompletion.timedOut] if the deadline expires.
+     * The request in flight at the deadline is canceled.
+     * The result is notified on the callback executor of the configuration.
+     * Call it after [completeTokenThreeDSecure] if the issuer may take a while to reflect the result.
+     *
+     * @param tokenId id of the token.
+     * @param deadlineMillis time limit of waiting.
+     * @return task of the completion. Cancel it to stop waiting.
+     */
+    @JvmOverloads
+    fun awaitThreeDSecureCompletion(
+        tokenId: TokenId,
+        deadlineMillis: Long = DEFAULT_THREE_D_SECURE_COMPLETION_DEADLINE_MILLIS
+    ): Task<PayjpThreeDSecureCompletion> {
+        require(deadlineMillis >= 0) { "deadlineMillis must not be negative." }
+        val tokenService = tokenService()
+        return ThreeDSecureCompletionTask(
+            tokenId = tokenId.id,
+            deadlineMillis = deadlineMillis,
+            scheduler = completionScheduler,
+            callbackExecutor = checkNotNull(callbackExecutor) { "You must initialize Payjp first" },
+            getToken = tokenService::getToken
+        )
+    }
 }
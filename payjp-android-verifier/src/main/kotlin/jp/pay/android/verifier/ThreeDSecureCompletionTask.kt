@@ -0,0 +1,277 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier
+
+import android.os.SystemClock
+import jp.pay.android.Task
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.Token
+import jp.pay.android.verifier.ui.PayjpThreeDSecureCompletion
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Task which polls a token until its 3-D Secure status is no longer [ThreeDSecureStatus.UNVERIFIED].
+ * The n-th wait is `initialIntervalMillis * 2^(n - 1)` (at most [maxIntervalMillis]) without jitter,
+ * and polling stops with the latest token when the next poll would pass [deadlineMillis].
+ * A request still in flight at [deadlineMillis] is canceled, and the task completes with the latest token,
+ * or fails with [InterruptedIOException] if no token has been got yet.
+ * Each poll is a new task created by [getToken] because a task can be executed only once.
+ *
+ * @param tokenId id of the token.
+ * @param deadlineMillis time limit of the whole polling.
+ * @param scheduler scheduler to wait before the next poll and to watch [deadlineMillis].
+ * @param callbackExecutor executor to notify results which are not notified by the token tasks.
+ * @param getToken create a new task to get the token.
+ */
+internal class ThreeDSecureCompletionTask(
+    private val tokenId: String,
+    private val deadlineMillis: Long,
+    private val scheduler: ScheduledExecutorService,
+    private val callbackExecutor: Executor,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+    private val initialIntervalMillis: Long = DEFAULT_INITIAL_INTERVAL_MILLIS,
+    private val maxIntervalMillis: Long = DEFAULT_MAX_INTERVAL_MILLIS,
+    private val getToken: (String) -> Task<Token>
+) : Task<PayjpThreeDSecureCompletion> {
+
+    private val executed = AtomicBoolean()
+    private val notified = AtomicBoolean()
+
+    @Volatile
+    private var canceled = false
+
+    @Volatile
+    private var deadlineExceeded = false
+
+    @Volatile
+    private var currentTask: Task<Token>? = null
+
+    @Volatile
+    private var pendingPoll: ScheduledFuture<*>? = null
+
+    @Volatile
+    private var deadlineTimer: ScheduledFuture<*>? = null
+
+    @Volatile
+    private var pendingCallback: Task.Callback<PayjpThreeDSecureCompletion>? = null
+
+    // the latest token and the number of polls to get it.
+    @Volatile
+    private var latest: Pair<Token, Int>? = null
+
+    private var startedAt = 0L
+
+    override fun run(): PayjpThreeDSecureCompletion {
+        start()
+        watchDeadline { currentTask?.cancel() }
+        try {
+            var attempts = 0
+            while (true) {
+                val token = try {
+                    nextTask().run()
+                } catch (e: IOException) {
+                    if (deadlineExceeded) {
+                        return timeout()
+                    }
+                    throw e
+                }
+                attempts++
+                latest = token to attempts
+                val delay = nextDelayMillis(attempts, token) ?: return complete(token, attempts)
+                Thread.sleep(delay)
+            }
+        } finally {
+            deadlineTimer?.cancel(false)
+        }
+    }
+
+    override fun enqueue(callback: Task.Callback<PayjpThreeDSecureCompletion>) {
+        start()
+        pendingCallback = callback
+        watchDeadline {
+            notifyOnce(callback) {
+                currentTask?.cancel()
+                pendingPoll?.cancel(false)
+                callbackExecutor.execute {
+                    try {
+                        callback.onSuccess(timeout())
+                    } catch (e: IOException) {
+                        callback.onError(e)
+                    }
+                }
+            }
+        }
+        poll(0, callback)
+    }
+
+    override fun isExecuted(): Boolean = executed.get()
+
+    override fun cancel() {
+        canceled = true
+        currentTask?.cancel()
+        if (pendingPoll?.cancel(false) == true) {
+            pendingCallback?.let { callback ->
+                notifyOnce(callback) {
+                    callbackExecutor.execute { callback.onError(IOException("Canceled")) }
+                }
+            }
+        }
+    }
+
+    override fun isCanceled(): Boolean = canceled
+
+    private fun start() {
+        check(executed.compareAndSet(false, true)) { "Already executed." }
+        startedAt = clock()
+    }
+
+    private fun watchDeadline(onDeadline: () -> Unit) {
+        deadlineTimer = try {
+            scheduler.schedule(
+                {
+                    deadlineExceeded = true
+                    onDeadline()
+                },
+                deadlineMillis,
+                TimeUnit.MILLISECONDS
+            )
+        } catch (e: RejectedExecutionException) {
+            // polling itself still stops at the deadline.
+            null
+        }
+    }
+
+    /**
+     * Run [notify] only if no result has been notified to [callback] yet.
+     */
+    private fun notifyOnce(callback: Task.Callback<PayjpThreeDSecureCompletion>, notify: () -> Unit) {
+        if (notified.compareAndSet(false, true)) {
+            deadlineTimer?.cancel(false)
+            pendingCallback = null
+            notify()
+        }
+    }
+
+    private fun poll(attempts: Int, callback: Task.Callback<PayjpThreeDSecureCompletion>) {
+        if (notified.get()) {
+            return
+        }
+        val task = try {
+            nextTask()
+        } catch (e: IOException) {
+            notifyOnce(callback) { callbackExecutor.execute { callback.onError(e) } }
+            return
+        }
+        task.enqueue(
+            object : Task.Callback<Token> {
+                override fun onSuccess(data: Token) {
+                    latest = data to (attempts + 1)
+                    val delay = nextDelayMillis(attempts + 1, data)
+                    if (delay == null) {
+                        notifyOnce(callback) { callback.onSuccess(complete(data, attempts + 1)) }
+                        return
+                    }
+                    try {
+                        pendingPoll = scheduler.schedule(
+                            { poll(attempts + 1, callback) },
+                            delay,
+                            TimeUnit.MILLISECONDS
+                        )
+                    } catch (e: RejectedExecutionException) {
+                        notifyOnce(callback) { callback.onError(IOException(e)) }
+                    }
+                }
+
+                override fun onError(throwable: Throwable) = notifyOnce(callback) { callback.onError(throwable) }
+            }
+        )
+    }
+
+    private fun nextTask(): Task<Token> {
+        if (canceled || deadlineExceeded) {
+            throw IOException("Canceled")
+        }
+        return getToken(tokenId).also { task ->
+            currentTask = task
+            // cancel() or the deadline may have missed the new task.
+            if (canceled || deadlineExceeded) {
+                task.cancel()
+            }
+        }
+    }
+
+    /**
+     * @return time to wait before the next poll, or null if polling should stop.
+     */
+    private fun nextDelayMillis(attempts: Int, token: Token): Long? {
+        if (isSettled(token)) {
+            return null
+        }
+        val delay = intervalMillis(attempts)
+        if (clock() - startedAt + delay >= deadlineMillis) {
+            return null
+        }
+        return delay
+    }
+
+    private fun intervalMillis(attempts: Int): Long {
+        var interval = initialIntervalMillis
+        repeat(attempts - 1) {
+            if (interval >= maxIntervalMillis) {
+                return maxIntervalMillis
+            }
+            interval *= 2
+        }
+        return interval.coerceAtMost(maxIntervalMillis)
+    }
+
+    private fun isSettled(token: Token): Boolean =
+        token.card.threeDSecureStatus != ThreeDSecureStatus.UNVERIFIED
+
+    private fun complete(token: Token, attempts: Int) = PayjpThreeDSecureCompletion(
+        token = token,
+        timedOut = !isSettled(token),
+        attempts = attempts,
+        elapsedMillis = clock() - startedAt
+    )
+
+    /**
+     * @return completion with the latest token when the request in flight is stopped by the deadline.
+     */
+    private fun timeout(): PayjpThreeDSecureCompletion {
+        val (token, attempts) = latest ?: throw InterruptedIOException("Timed out before getting the token.")
+        return complete(token, attempts)
+    }
+
+    companion object {
+        const val DEFAULT_INITIAL_INTERVAL_MILLIS = 500L
+        const val DEFAULT_MAX_INTERVAL_MILLIS = 4_000L
+    }
+}
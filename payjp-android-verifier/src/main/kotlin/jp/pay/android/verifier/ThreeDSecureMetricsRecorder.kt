@@ -0,0 +1,59 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier
+
+import android.os.SystemClock
+import androidx.annotation.MainThread
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetrics
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetricsListener
+
+/**
+ * Measure the time from launching a browser for 3-D Secure until its first page is loaded.
+ */
+internal class ThreeDSecureMetricsRecorder(
+    private val clock: () -> Long = SystemClock::elapsedRealtime
+) {
+    var listener: PayjpThreeDSecureMetricsListener? = null
+    private var launchedBrowser: PayjpThreeDSecureMetrics.Browser? = null
+    private var launchedAt: Long = 0L
+
+    @MainThread
+    fun onLaunched(browser: PayjpThreeDSecureMetrics.Browser) {
+        launchedBrowser = browser
+        launchedAt = clock()
+    }
+
+    /**
+     * Report the metrics once per launch.
+     */
+    @MainThread
+    fun onFirstPaint(browser: PayjpThreeDSecureMetrics.Browser): PayjpThreeDSecureMetrics? {
+        if (launchedBrowser != browser) {
+            return null
+        }
+        launchedBrowser = null
+        return PayjpThreeDSecureMetrics(browser, clock() - launchedAt).also {
+            listener?.onMetrics(it)
+        }
+    }
+}
@@ -42,7 +42,8 @@ internal sealed class WebBrowser {
         }
 
         override fun createIntent(context: Context, uri: Uri, callbackUri: Uri): Intent {
-            return CustomTabsIntent.Builder()
+            // use the warmed-up session if connected.
+            return CustomTabsIntent.Builder(PayjpVerifier.customTabsSession())
                 .setShowTitle(true)
                 .build().intent
                 .setPackage(CustomTabsHelper.getPackageNameToUse(context))
@@ -22,22 +22,125 @@
  */
 package jp.pay.android.verifier
 
+import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
+import android.content.IntentFilter
 import android.content.pm.PackageManager
 import android.net.Uri
+import androidx.core.content.ContextCompat
+import jp.pay.android.PayjpConstants
+import jp.pay.android.verifier.util.CustomTabsHelper
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
-internal class WebBrowserResolver(vararg browsers: WebBrowser) {
+/**
+ * Resolve the browser to open 3-D Secure pages with.
+ *
+ * Resolution queries [PackageManager], so it is cached and can be computed in background by [prefetch].
+ * The cache is invalidated when a package is installed, updated or removed.
+ * The receiver watching package changes is registered on the application context by the first [prefetch]
+ * and is never unregistered, because the resolver is owned by [PayjpVerifier] and lives as long as the process.
+ */
+internal class WebBrowserResolver(
+    vararg browsers: WebBrowser,
+    private val executor: Executor = Executors.newSingleThreadExecutor { r ->
+        Thread(r, "payjp-web-browser-resolver").apply { isDaemon = true }
+    },
+) {
+
+    private class Resolution(val browser: WebBrowser?)
 
     private val browserList = listOf(*browsers)
+    @Volatile
+    private var resolution: Resolution? = null
+    private val generation = AtomicInteger()
+    private val prefetching = AtomicBoolean(false)
+    private val receiverRegistered = AtomicBoolean(false)
+
+    /**
+     * Resolve the browser in background unless it is cached, and watch package changes.
+     */
+    fun prefetch(context: Context) {
+        val applicationContext = context.applicationContext
+        registerPackageChangeReceiver(applicationContext)
+        if (resolution == null && prefetching.compareAndSet(false, true)) {
+            executor.execute {
+                val current = generation.get()
+                try {
+                    if (resolution == null) {
+                        val result = Resolution(findBrowser(applicationContext, PROBE_URI))
+                        if (generation.get() == current) {
+                            resolution = result
+                        }
+                    }
+                } finally {
+                    prefetching.set(false)
+                }
+                // prefetch requested by invalidation meanwhile was skipped, so run it again.
+                if (generation.get() != current) {
+                    prefetch(applicationContext)
+                }
+            }
+        }
+    }
 
     fun resolve(context: Context, uri: Uri, callbackUri: Uri): Intent? {
+        // fast path if resolved by prefetch.
+        val browser = resolution?.browser ?: findBrowser(context, uri).also {
+            resolution = Resolution(it)
+        }
+        return browser?.createIntent(context, uri, callbackUri)
+    }
+
+    /**
+     * Forget the resolved browser.
+     */
+    fun invalidate() {
+        generation.incrementAndGet()
+        resolution = null
+        CustomTabsHelper.clearPackageNameToUse()
+    }
+
+    private fun findBrowser(context: Context, uri: Uri): WebBrowser? {
         return browserList.firstOrNull { it.canResolveComponent(context, uri) }
-            ?.createIntent(context, uri, callbackUri)
-            ?.takeIf {
-                context.packageManager.queryIntentActivities(it, PackageManager.MATCH_DEFAULT_ONLY)
+            ?.takeIf { browser ->
+                val intent = browser.createIntent(context, uri, uri)
+                context.packageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY)
                     ?.isNotEmpty()
                     ?: false
             }
     }
+
+    private fun registerPackageChangeReceiver(context: Context) {
+        if (!receiverRegistered.compareAndSet(false, true)) {
+            return
+        }
+        val filter = IntentFilter().apply {
+            addAction(Intent.ACTION_PACKAGE_ADDED)
+            addAction(Intent.ACTION_PACKAGE_CHANGED)
+            addAction(Intent.ACTION_PACKAGE_REMOVED)
+            addAction(Intent.ACTION_PACKAGE_REPLACED)
+            addDataScheme("package")
+        }
+        ContextCompat.registerReceiver(
+            context,
+            object : BroadcastReceiver() {
+                override fun onReceive(context: Context, intent: Intent) {
+                    invalidate()
+                    prefetch(context)
+                }
+            },
+            filter,
+            // package broadcasts are sent by the system.
+            ContextCompat.RECEIVER_NOT_EXPORTED
+        )
+    }
+
+    private companion object {
+        // 3-D Secure pages are always on the API host.
+        val PROBE_URI: Uri = Uri.parse(PayjpConstants.API_ENDPOINT)
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier.ui
+
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.Token
+
+/**
+ * Result of waiting for 3-D Secure of a token to complete.
+ *
+ * @param token the latest token.
+ * @param timedOut true if the deadline expired before the status settled.
+ * @param attempts number of requests to get the token.
+ * @param elapsedMillis time from the start of waiting until the result.
+ */
+data class PayjpThreeDSecureCompletion(
+    val token: Token,
+    val timedOut: Boolean,
+    val attempts: Int,
+    val elapsedMillis: Long,
+) {
+
+    /**
+     * 3-D Secure status of the latest token.
+     */
+    val status: ThreeDSecureStatus?
+        get() = token.card.threeDSecureStatus
+}
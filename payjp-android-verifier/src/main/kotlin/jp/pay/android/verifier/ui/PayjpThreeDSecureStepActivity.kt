@@ -110,6 +110,13 @@ class PayjpThreeDSecureStepActivity : AppCompatActivity() {
         finish()
     }
 
+    override fun onDestroy() {
+        if (isFinishing) {
+            PayjpVerifier.releaseWarmUp()
+        }
+        super.onDestroy()
+    }
+
     override fun onSaveInstanceState(outState: Bundle) {
         super.onSaveInstanceState(outState)
         currentResourceId?.let { resourceId ->
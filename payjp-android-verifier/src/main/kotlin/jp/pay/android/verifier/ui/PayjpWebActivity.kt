@@ -27,6 +27,7 @@ import android.content.Context
 import android.content.Intent
 import android.net.Uri
 import android.os.Bundle
+import android.view.ViewGroup
 import android.webkit.URLUtil
 import androidx.appcompat.app.AppCompatActivity
 import androidx.lifecycle.DefaultLifecycleObserver
@@ -69,6 +70,7 @@ class PayjpWebActivity : AppCompatActivity(), DefaultLifecycleObserver {
     }
 
     private lateinit var binding: PayjpWebActivityBinding
+    private lateinit var webView: VerifierWebView
     private val logger: PayjpLogger = PayjpVerifier.logger()
 
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -76,6 +78,14 @@ class PayjpWebActivity : AppCompatActivity(), DefaultLifecycleObserver {
         binding = PayjpWebActivityBinding.inflate(layoutInflater)
         setContentView(binding.root)
         supportActionBar?.setDisplayHomeAsUpEnabled(true)
+        webView = VerifierWebViewPool.obtain(this).apply {
+            isFocusable = true
+            isFocusableInTouchMode = true
+        }
+        binding.webViewContainer.addView(
+            webView,
+            ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT)
+        )
         setUpUI()
         lifecycle.addObserver(this)
         title = customTitle
@@ -87,8 +97,8 @@ class PayjpWebActivity : AppCompatActivity(), DefaultLifecycleObserver {
     }
 
     override fun onBackPressed() {
-        if (binding.webView.canGoBack()) {
-            binding.webView.goBack()
+        if (webView.canGoBack()) {
+            webView.goBack()
         } else {
             super.onBackPressed()
         }
@@ -121,15 +131,16 @@ class PayjpWebActivity : AppCompatActivity(), DefaultLifecycleObserver {
     }
 
     private fun cleanUpWebView() {
-        binding.webView.destroy()
+        binding.webViewContainer.removeView(webView)
+        VerifierWebViewPool.release(webView)
     }
 
     private fun startLoad() {
-        binding.webView.loadUrl(startUri.toString())
+        webView.loadUrl(startUri.toString())
     }
 
     private fun setUpUI() {
-        binding.webView.run {
+        webView.run {
             addInterceptor { uri ->
                 logger.d("interceptor uri: $uri")
                 if (!URLUtil.isNetworkUrl(uri.toString())) {
@@ -147,6 +158,9 @@ class PayjpWebActivity : AppCompatActivity(), DefaultLifecycleObserver {
                     swipeRefresh = binding.swipeRefresh
                 )
             )
+            addLoadStateWatcher(onFinished = { _, _ ->
+                PayjpVerifier.onFirstPaint(PayjpThreeDSecureMetrics.Browser.IN_APP_WEB)
+            })
             addOnStartedLoadState { _, url ->
                 if (url.startsWith(callbackUri.toString())) {
                     logger.d("url matches with callbackUri $url")
@@ -157,8 +171,8 @@ class PayjpWebActivity : AppCompatActivity(), DefaultLifecycleObserver {
             }
         }
         binding.swipeRefresh.run {
-            setOnChildScrollUpCallback { _, _ -> binding.webView.scrollY > 10 }
-            setOnRefreshListener { binding.webView.reload() }
+            setOnChildScrollUpCallback { _, _ -> webView.scrollY > 10 }
+            setOnRefreshListener { webView.reload() }
         }
     }
 
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier.ui
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.content.MutableContextWrapper
+import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import android.webkit.WebSettings
+import androidx.annotation.MainThread
+import androidx.annotation.VisibleForTesting
+import jp.pay.android.verifier.PayjpVerifier
+
+/**
+ * Pool which keeps one [VerifierWebView] ready for [PayjpWebActivity].
+ *
+ * Creating the first WebView in a process loads the WebView provider, which takes hundreds of milliseconds.
+ * Once enabled, the pool loads the provider in background and creates a WebView on an idle main thread,
+ * wrapped in [MutableContextWrapper] so that it can be attached to the activity later.
+ * A WebView cannot be reused after [VerifierWebView.destroy], so the pool creates a new one after release.
+ */
+internal object VerifierWebViewPool {
+
+    // both hold the application context only.
+    @SuppressLint("StaticFieldLeak")
+    private var applicationContext: Context? = null
+    @SuppressLint("StaticFieldLeak")
+    private var pooled: VerifierWebView? = null
+    private var refillScheduled = false
+
+    @VisibleForTesting
+    internal val pooledWebView: VerifierWebView?
+        get() = pooled
+
+    @MainThread
+    fun enable(context: Context) {
+        if (applicationContext != null) {
+            return
+        }
+        val applicationContext = context.applicationContext
+        this.applicationContext = applicationContext
+        val handler = Handler(Looper.getMainLooper())
+        Thread({
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                try {
+                    WebSettings.getDefaultUserAgent(applicationContext)
+                } catch (e: RuntimeException) {
+                    PayjpVerifier.logger().w("Unable to load WebView provider. ${e.message}")
+                }
+            }
+            handler.post { scheduleRefill() }
+        }, "payjp-webview-warmup").apply { isDaemon = true }.start()
+    }
+
+    @MainThread
+    fun disable() {
+        applicationContext = null
+        pooled?.destroy()
+        pooled = null
+    }
+
+    /**
+     * Return the pre-created WebView attached to [context], or create a new one.
+     */
+    @MainThread
+    fun obtain(context: Context): VerifierWebView {
+        val webView = pooled ?: return VerifierWebView(MutableContextWrapper(context))
+        pooled = null
+        (webView.context as MutableContextWrapper).baseContext = context
+        return webView
+    }
+
+    /**
+     * Destroy [webView] obtained from [obtain] and prepare the next one.
+     */
+    @MainThread
+    fun release(webView: VerifierWebView) {
+        // do not keep the activity from the destroyed WebView.
+        (webView.context as? MutableContextWrapper)?.baseContext = webView.context.applicationContext
+        webView.destroy()
+        scheduleRefill()
+    }
+
+    private fun scheduleRefill() {
+        if (applicationContext == null || pooled != null || refillScheduled) {
+            return
+        }
+        refillScheduled = true
+        Looper.myQueue().addIdleHandler {
+            refillScheduled = false
+            val context = applicationContext
+            if (context != null && pooled == null) {
+                pooled = try {
+                    VerifierWebView(MutableContextWrapper(context))
+                } catch (e: RuntimeException) {
+                    PayjpVerifier.logger().w("Unable to create WebView. ${e.message}")
+                    null
+                }
+            }
+            false
+        }
+    }
+}
@@ -57,7 +57,7 @@ public class CustomTabsHelper {
      * @return The package name recommended to use for connecting to custom tabs related components.
      */
     @Nullable
-    public static String getPackageNameToUse(Context context) {
+    public static synchronized String getPackageNameToUse(Context context) {
         if (sPackageNameToUse != null) return sPackageNameToUse;
 
         PackageManager pm = context.getPackageManager();
@@ -103,6 +103,14 @@ public class CustomTabsHelper {
         return sPackageNameToUse;
     }
 
+    /**
+     * Forget the package name found by {@link #getPackageNameToUse(Context)},
+     * e.g. when a browser is installed or uninstalled.
+     */
+    public static synchronized void clearPackageNameToUse() {
+        sPackageNameToUse = null;
+    }
+
     /**
      * Used to check whether there is a specialized handler for a given intent.
      * @param intent The intent to check with.
@@ -0,0 +1,280 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.Task
+import jp.pay.android.TestStubs
+import jp.pay.android.model.ThreeDSecureStatus
+import jp.pay.android.model.Token
+import jp.pay.android.util.Tasks
+import jp.pay.android.verifier.ui.PayjpThreeDSecureCompletion
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.instanceOf
+import org.hamcrest.Matchers.nullValue
+import org.junit.After
+import org.junit.Assert.fail
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+@RunWith(AndroidJUnit4::class)
+class ThreeDSecureCompletionTaskTest {
+
+    private val scheduler = Executors.newSingleThreadScheduledExecutor()
+    private val callbackExecutor = Executor { it.run() }
+    private var now = 0L
+    private var requestCount = 0
+    private val inFlightTasks = mutableListOf<InFlightTask>()
+
+    @After
+    fun tearDown() {
+        scheduler.shutdownNow()
+    }
+
+    private fun token(status: ThreeDSecureStatus?): Token = TestStubs.newToken(
+        id = "tok_123",
+        card = TestStubs.newCard(threeDSecureStatus = status)
+    )
+
+    private fun createTask(
+        vararg statuses: ThreeDSecureStatus?,
+        deadlineMillis: Long = 10_000,
+        initialIntervalMillis: Long = 1,
+        elapsedPerRequest: Long = 0,
+        respondedRequests: Int = Int.MAX_VALUE
+    ) = ThreeDSecureCompletionTask(
+        tokenId = "tok_123",
+        deadlineMillis = deadlineMillis,
+        scheduler = scheduler,
+        callbackExecutor = callbackExecutor,
+        clock = { now },
+        initialIntervalMillis = initialIntervalMillis,
+        maxIntervalMillis = initialIntervalMillis * 8
+    ) { id ->
+        assertThat(id, `is`("tok_123"))
+        now += elapsedPerRequest
+        if (requestCount >= respondedRequests) {
+            requestCount++
+            InFlightTask().also { inFlightTasks.add(it) }
+        } else {
+            Tasks.success(token(statuses[minOf(requestCount++, statuses.size - 1)]))
+        }
+    }
+
+    /**
+     * Task which does not respond until canceled.
+     */
+    private class InFlightTask : Task<Token> {
+        private val canceledLatch = CountDownLatch(1)
+        @Volatile
+        private var callback: Task.Callback<Token>? = null
+
+        override fun run(): Token {
+            canceledLatch.await()
+            throw IOException("Canceled")
+        }
+
+        override fun enqueue(callback: Task.Callback<Token>) {
+            this.callback = callback
+        }
+
+        override fun isExecuted(): Boolean = true
+
+        override fun cancel() {
+            canceledLatch.countDown()
+            callback?.onError(IOException("Canceled"))
+        }
+
+        override fun isCanceled(): Boolean = canceledLatch.count == 0L
+    }
+
+    private class RecordingCallback : Task.Callback<PayjpThreeDSecureCompletion> {
+        val latch = CountDownLatch(1)
+        val count = AtomicInteger()
+        val result = AtomicReference<PayjpThreeDSecureCompletion>()
+        val error = AtomicReference<Throwable>()
+
+        override fun onSuccess(data: PayjpThreeDSecureCompletion) {
+            result.set(data)
+            count.incrementAndGet()
+            latch.countDown()
+        }
+
+        override fun onError(throwable: Throwable) {
+            error.set(throwable)
+            count.incrementAndGet()
+            latch.countDown()
+        }
+    }
+
+    @Test
+    fun run_polls_until_status_settled() {
+        val result = createTask(
+            ThreeDSecureStatus.UNVERIFIED,
+            ThreeDSecureStatus.UNVERIFIED,
+            ThreeDSecureStatus.VERIFIED
+        ).run()
+
+        assertThat(result.status, `is`(ThreeDSecureStatus.VERIFIED))
+        assertThat(result.timedOut, `is`(false))
+        assertThat(result.attempts, `is`(3))
+    }
+
+    @Test
+    fun run_returns_immediately_if_not_unverified() {
+        val result = createTask(ThreeDSecureStatus.FAILED).run()
+
+        assertThat(result.status, `is`(ThreeDSecureStatus.FAILED))
+        assertThat(result.attempts, `is`(1))
+    }
+
+    @Test
+    fun run_stops_at_deadline() {
+        val result = createTask(
+            ThreeDSecureStatus.UNVERIFIED,
+            deadlineMillis = 250,
+            elapsedPerRequest = 100
+        ).run()
+
+        assertThat(result.status, `is`(ThreeDSecureStatus.UNVERIFIED))
+        assertThat(result.timedOut, `is`(true))
+        assertThat(result.attempts, `is`(3))
+        assertThat(result.elapsedMillis, `is`(300L))
+    }
+
+    @Test
+    fun run_after_cancel_throws() {
+        val task = createTask(ThreeDSecureStatus.VERIFIED)
+        task.cancel()
+
+        try {
+            task.run()
+            fail()
+        } catch (e: IOException) {
+            assertThat(requestCount, `is`(0))
+        }
+    }
+
+    @Test
+    fun enqueue_notifies_completion() {
+        val latch = CountDownLatch(1)
+        val result = AtomicReference<PayjpThreeDSecureCompletion>()
+        createTask(ThreeDSecureStatus.UNVERIFIED, ThreeDSecureStatus.ATTEMPTED).enqueue(
+            object : Task.Callback<PayjpThreeDSecureCompletion> {
+                override fun onSuccess(data: PayjpThreeDSecureCompletion) {
+                    result.set(data)
+                    latch.countDown()
+                }
+
+                override fun onError(throwable: Throwable) = fail()
+            }
+        )
+
+        assertThat(latch.await(1, TimeUnit.SECONDS), `is`(true))
+        assertThat(result.get().status, `is`(ThreeDSecureStatus.ATTEMPTED))
+        assertThat(result.get().attempts, `is`(2))
+    }
+
+    @Test
+    fun cancel_while_waiting_notifies_error() {
+        val error = AtomicReference<Throwable>()
+        val task = createTask(ThreeDSecureStatus.UNVERIFIED, initialIntervalMillis = 10_000)
+        task.enqueue(
+            object : Task.Callback<PayjpThreeDSecureCompletion> {
+                override fun onSuccess(data: PayjpThreeDSecureCompletion) = fail()
+
+                override fun onError(throwable: Throwable) = error.set(throwable)
+            }
+        )
+        task.cancel()
+
+        assertThat(error.get(), instanceOf(IOException::class.java))
+        assertThat(requestCount, `is`(1))
+    }
+
+    @Test
+    fun run_cancels_request_in_flight_at_deadline() {
+        val result = createTask(
+            ThreeDSecureStatus.UNVERIFIED,
+            deadlineMillis = 100,
+            respondedRequests = 1
+        ).run()
+
+        assertThat(result.status, `is`(ThreeDSecureStatus.UNVERIFIED))
+        assertThat(result.timedOut, `is`(true))
+        assertThat(result.attempts, `is`(1))
+        assertThat(inFlightTasks.single().isCanceled, `is`(true))
+    }
+
+    @Test
+    fun enqueue_cancels_request_in_flight_at_deadline() {
+        val callback = RecordingCallback()
+        createTask(
+            ThreeDSecureStatus.UNVERIFIED,
+            deadlineMillis = 100,
+            respondedRequests = 1
+        ).enqueue(callback)
+
+        assertThat(callback.latch.await(1, TimeUnit.SECONDS), `is`(true))
+        assertThat(callback.count.get(), `is`(1))
+        assertThat(callback.error.get(), nullValue())
+        assertThat(callback.result.get().timedOut, `is`(true))
+        assertThat(callback.result.get().attempts, `is`(1))
+        assertThat(inFlightTasks.single().isCanceled, `is`(true))
+    }
+
+    @Test
+    fun enqueue_fails_if_no_token_by_deadline() {
+        val callback = RecordingCallback()
+        createTask(
+            ThreeDSecureStatus.UNVERIFIED,
+            deadlineMillis = 100,
+            respondedRequests = 0
+        ).enqueue(callback)
+
+        assertThat(callback.latch.await(1, TimeUnit.SECONDS), `is`(true))
+        assertThat(callback.count.get(), `is`(1))
+        assertThat(callback.error.get(), instanceOf(InterruptedIOException::class.java))
+        assertThat(inFlightTasks.single().isCanceled, `is`(true))
+    }
+
+    @Test
+    fun cancel_in_flight_notifies_error_once() {
+        val callback = RecordingCallback()
+        val task = createTask(ThreeDSecureStatus.UNVERIFIED, respondedRequests = 0)
+        task.enqueue(callback)
+        task.cancel()
+
+        assertThat(callback.count.get(), `is`(1))
+        assertThat(callback.error.get(), instanceOf(IOException::class.java))
+    }
+}
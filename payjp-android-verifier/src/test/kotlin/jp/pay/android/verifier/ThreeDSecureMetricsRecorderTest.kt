@@ -0,0 +1,67 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier
+
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetrics
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetrics.Browser
+import jp.pay.android.verifier.ui.PayjpThreeDSecureMetricsListener
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+
+class ThreeDSecureMetricsRecorderTest {
+
+    private var now = 1000L
+    private val reported = mutableListOf<PayjpThreeDSecureMetrics>()
+    private val recorder = ThreeDSecureMetricsRecorder(clock = { now }).apply {
+        listener = PayjpThreeDSecureMetricsListener { reported.add(it) }
+    }
+
+    @Test
+    fun report_time_to_first_paint_once() {
+        recorder.onLaunched(Browser.CUSTOM_TABS)
+        now += 800
+        recorder.onFirstPaint(Browser.CUSTOM_TABS)
+        now += 500
+        recorder.onFirstPaint(Browser.CUSTOM_TABS)
+        assertThat(reported, contains(PayjpThreeDSecureMetrics(Browser.CUSTOM_TABS, 800)))
+    }
+
+    @Test
+    fun ignore_first_paint_without_launch() {
+        assertThat(recorder.onFirstPaint(Browser.IN_APP_WEB), `is`(nullValue()))
+        assertThat(reported, `is`(empty()))
+    }
+
+    @Test
+    fun ignore_first_paint_of_other_browser() {
+        recorder.onLaunched(Browser.IN_APP_WEB)
+        now += 300
+        recorder.onFirstPaint(Browser.CUSTOM_TABS)
+        recorder.onFirstPaint(Browser.IN_APP_WEB)
+        assertThat(reported, contains(PayjpThreeDSecureMetrics(Browser.IN_APP_WEB, 300)))
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier
+
+import android.content.Context
+import android.net.Uri
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.verifier.ui.PayjpWebActivity
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.Executor
+
+@RunWith(AndroidJUnit4::class)
+class WebBrowserResolverTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val uri = Uri.parse("https://api.pay.jp/v1/tds/tok_123/start")
+    private val callbackUri = Uri.parse("https://api.pay.jp/v1/tds/tok_123/finish")
+    private val pending = mutableListOf<Runnable>()
+    private val resolver = WebBrowserResolver(
+        WebBrowser.InAppWeb,
+        executor = Executor { pending.add(it) }
+    )
+
+    @Test
+    fun prefetch_resolves_in_background_once() {
+        resolver.prefetch(context)
+        resolver.prefetch(context)
+        assertThat(pending.size, `is`(1))
+        pending.removeAt(0).run()
+
+        val intent = resolver.resolve(context, uri, callbackUri)
+        assertThat(intent?.component?.className, `is`(PayjpWebActivity::class.java.name))
+        assertThat(intent?.getStringExtra(PayjpWebActivity.EXTRA_KEY_START_URI), `is`(uri.toString()))
+        resolver.prefetch(context)
+        assertThat(pending.size, `is`(0))
+    }
+
+    @Test
+    fun resolve_without_prefetch() {
+        val intent = resolver.resolve(context, uri, callbackUri)
+        assertThat(intent?.component?.className, `is`(PayjpWebActivity::class.java.name))
+    }
+
+    @Test
+    fun prefetch_again_after_invalidate() {
+        resolver.prefetch(context)
+        pending.removeAt(0).run()
+        resolver.invalidate()
+        resolver.prefetch(context)
+        assertThat(pending.size, `is`(1))
+    }
+
+    @Test
+    fun prefetch_result_is_dropped_if_invalidated_meanwhile() {
+        resolver.prefetch(context)
+        resolver.invalidate()
+        pending.removeAt(0).run()
+        resolver.prefetch(context)
+        assertThat(pending.size, `is`(1))
+    }
+
+    @Test
+    fun prefetch_runs_again_if_invalidated_meanwhile() {
+        resolver.prefetch(context)
+        resolver.invalidate()
+        // the prefetch requested along with invalidation is skipped while prefetching.
+        resolver.prefetch(context)
+        assertThat(pending.size, `is`(1))
+        pending.removeAt(0).run()
+        assertThat(pending.size, `is`(1))
+        pending.removeAt(0).run()
+        assertThat(pending.size, `is`(0))
+
+        resolver.prefetch(context)
+        assertThat(pending.size, `is`(0))
+    }
+}
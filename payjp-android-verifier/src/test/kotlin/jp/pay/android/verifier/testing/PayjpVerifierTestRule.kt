@@ -26,20 +26,23 @@ import jp.pay.android.PayjpLogger
 import jp.pay.android.PayjpTokenService
 import jp.pay.android.verifier.PayjpVerifier
 import org.junit.rules.ExternalResource
+import java.util.concurrent.Executor
 
 /**
  * Test rule that configure PayjpService
  */
 class PayjpVerifierTestRule(
     private val tokenService: PayjpTokenService,
-    private val threeDSecureRedirectName: String?
+    private val threeDSecureRedirectName: String?,
+    private val callbackExecutor: Executor = Executor { it.run() }
 ) : ExternalResource() {
 
     override fun before() {
         PayjpVerifier.configure(
             logger = PayjpLogger.get(debugEnabled = true),
             tokenService = tokenService,
-            threeDSecureRedirectName = threeDSecureRedirectName
+            threeDSecureRedirectName = threeDSecureRedirectName,
+            callbackExecutor = callbackExecutor
         )
     }
 }
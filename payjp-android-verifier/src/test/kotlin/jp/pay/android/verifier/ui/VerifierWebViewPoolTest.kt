@@ -0,0 +1,135 @@
+/*
+ *
+ * Copyright (c) 2021 PAY, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package jp.pay.android.verifier.ui
+
+import android.content.Context
+import android.content.MutableContextWrapper
+import android.os.Looper
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.core.app.launchActivity
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import jp.pay.android.verifier.testing.TestEntryActivity
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.not
+import org.hamcrest.Matchers.notNullValue
+import org.hamcrest.Matchers.nullValue
+import org.hamcrest.Matchers.sameInstance
+import org.junit.After
+import org.junit.Assert.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.LooperMode
+
+@RunWith(AndroidJUnit4::class)
+@LooperMode(LooperMode.Mode.PAUSED)
+class VerifierWebViewPoolTest {
+
+    private val applicationContext: Context = ApplicationProvider.getApplicationContext()
+
+    @After
+    fun tearDown() {
+        VerifierWebViewPool.disable()
+    }
+
+    @Test
+    fun obtain_creates_webView_if_pool_is_empty() {
+        launchActivity<TestEntryActivity>().onActivity { activity ->
+            val webView = VerifierWebViewPool.obtain(activity)
+
+            assertThat(VerifierWebViewPool.pooledWebView, nullValue())
+            assertThat((webView.context as MutableContextWrapper).baseContext, sameInstance<Context>(activity))
+        }
+    }
+
+    @Test
+    fun obtain_returns_pooled_webView_attached_to_context() {
+        enableAndWaitForRefill()
+        val pooled = VerifierWebViewPool.pooledWebView
+
+        launchActivity<TestEntryActivity>().onActivity { activity ->
+            val webView = VerifierWebViewPool.obtain(activity)
+
+            assertThat(webView, sameInstance(pooled))
+            assertThat(VerifierWebViewPool.pooledWebView, nullValue())
+            assertThat((webView.context as MutableContextWrapper).baseContext, sameInstance<Context>(activity))
+        }
+    }
+
+    @Test
+    fun release_resets_baseContext_to_application_context() {
+        launchActivity<TestEntryActivity>().onActivity { activity ->
+            val webView = VerifierWebViewPool.obtain(activity)
+
+            VerifierWebViewPool.release(webView)
+
+            assertThat((webView.context as MutableContextWrapper).baseContext, sameInstance(applicationContext))
+        }
+    }
+
+    @Test
+    fun release_refills_pool_while_enabled() {
+        enableAndWaitForRefill()
+        val webView = VerifierWebViewPool.obtain(applicationContext)
+
+        VerifierWebViewPool.release(webView)
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertThat(VerifierWebViewPool.pooledWebView, notNullValue())
+        assertThat(VerifierWebViewPool.pooledWebView, not(sameInstance(webView)))
+    }
+
+    @Test
+    fun release_does_not_refill_pool_after_disable() {
+        enableAndWaitForRefill()
+        val webView = VerifierWebViewPool.obtain(applicationContext)
+        VerifierWebViewPool.disable()
+
+        VerifierWebViewPool.release(webView)
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertThat(VerifierWebViewPool.pooledWebView, nullValue())
+        assertThat(VerifierWebViewPool.obtain(applicationContext), not(sameInstance(webView)))
+    }
+
+    @Test
+    fun disable_destroys_pooled_webView() {
+        enableAndWaitForRefill()
+
+        VerifierWebViewPool.disable()
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertThat(VerifierWebViewPool.pooledWebView, nullValue())
+    }
+
+    private fun enableAndWaitForRefill() {
+        VerifierWebViewPool.enable(applicationContext)
+        // the WebView provider is loaded in background, then the WebView is created on the idle main thread.
+        val deadline = System.currentTimeMillis() + 5_000L
+        while (VerifierWebViewPool.pooledWebView == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L)
+            shadowOf(Looper.getMainLooper()).idle()
+        }
+        assertThat(VerifierWebViewPool.pooledWebView, `is`(notNullValue()))
+    }
+}